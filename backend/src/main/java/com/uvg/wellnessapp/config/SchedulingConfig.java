@@ -0,0 +1,12 @@
+package com.uvg.wellnessapp.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables {@code @Scheduled} background jobs (pool size is set in application.yml).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,58 @@
+package com.uvg.wellnessapp.domain;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "ai_insights")
+public class AiInsight {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(nullable = false, length = 64)
+    private String fingerprint; // SHA-256 of the data the insight was generated from
+
+    @Column(name = "insight_json", nullable = false, columnDefinition = "text")
+    private String insightJson;
+
+    @Column(name = "input_tokens", nullable = false)
+    private int inputTokens;
+
+    @Column(name = "output_tokens", nullable = false)
+    private int outputTokens;
+
+    @Column(name = "generated_at", nullable = false)
+    private LocalDateTime generatedAt = LocalDateTime.now();
+
+    // Constructors
+    public AiInsight() {}
+
+    public AiInsight(Long userId, String fingerprint, String insightJson, int inputTokens, int outputTokens) {
+        this.userId = userId;
+        this.fingerprint = fingerprint;
+        this.insightJson = insightJson;
+        this.inputTokens = inputTokens;
+        this.outputTokens = outputTokens;
+    }
+
+    // Getters and Setters
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public String getFingerprint() { return fingerprint; }
+    public void setFingerprint(String fingerprint) { this.fingerprint = fingerprint; }
+
+    public String getInsightJson() { return insightJson; }
+    public void setInsightJson(String insightJson) { this.insightJson = insightJson; }
+
+    public int getInputTokens() { return inputTokens; }
+    public void setInputTokens(int inputTokens) { this.inputTokens = inputTokens; }
+
+    public int getOutputTokens() { return outputTokens; }
+    public void setOutputTokens(int outputTokens) { this.outputTokens = outputTokens; }
+
+    public LocalDateTime getGeneratedAt() { return generatedAt; }
+    public void setGeneratedAt(LocalDateTime generatedAt) { this.generatedAt = generatedAt; }
+}
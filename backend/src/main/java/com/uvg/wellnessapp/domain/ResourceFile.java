@@ -0,0 +1,71 @@
+package com.uvg.wellnessapp.domain;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+
+/** A file derived from a resource's upload, such as a thumbnail of an image. */
+@Entity
+@Table(name = "resource_files")
+public class ResourceFile {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "resource_id", nullable = false)
+    private Long resourceId;
+
+    @Column(length = 16)
+    private String variant;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "file_url", nullable = false, length = 512)
+    private String fileUrl;
+
+    @Column(name = "file_key", length = 80)
+    private String fileKey;
+
+    @Column(name = "content_type", length = 64)
+    private String contentType;
+
+    private Integer width;
+
+    private Integer height;
+
+    @Column(name = "size_bytes")
+    private Long sizeBytes;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    // Constructors
+    public ResourceFile() {}
+
+    public ResourceFile(Long resourceId, String variant, String fileKey, String fileUrl,
+                        String contentType, int width, int height, long sizeBytes) {
+        this.resourceId = resourceId;
+        this.variant = variant;
+        this.fileName = fileKey;
+        this.fileKey = fileKey;
+        this.fileUrl = fileUrl;
+        this.contentType = contentType;
+        this.width = width;
+        this.height = height;
+        this.sizeBytes = sizeBytes;
+    }
+
+    // Getters
+    public Long getId() { return id; }
+    public Long getResourceId() { return resourceId; }
+    public String getVariant() { return variant; }
+    public String getFileName() { return fileName; }
+    public String getFileUrl() { return fileUrl; }
+    public String getFileKey() { return fileKey; }
+    public String getContentType() { return contentType; }
+    public Integer getWidth() { return width; }
+    public Integer getHeight() { return height; }
+    public Long getSizeBytes() { return sizeBytes; }
+    public OffsetDateTime getCreatedAt() { return createdAt; }
+}
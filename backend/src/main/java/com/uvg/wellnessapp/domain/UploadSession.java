@@ -0,0 +1,63 @@
+package com.uvg.wellnessapp.domain;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/** A resumable upload that has been created but not yet turned into a resource file. */
+@Entity
+@Table(name = "upload_sessions")
+public class UploadSession {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "created_by", nullable = false)
+    private Long createdBy;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(nullable = false, length = 16)
+    private String extension;
+
+    @Column(name = "content_type", nullable = false, length = 128)
+    private String contentType;
+
+    @Column(name = "upload_length", nullable = false)
+    private Long uploadLength;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    @Column(name = "expires_at", nullable = false)
+    private OffsetDateTime expiresAt;
+
+    // Constructors
+    public UploadSession() {}
+
+    public UploadSession(UUID id, Long createdBy, String fileName, String extension, String contentType,
+                         long uploadLength, OffsetDateTime expiresAt) {
+        this.id = id;
+        this.createdBy = createdBy;
+        this.fileName = fileName;
+        this.extension = extension;
+        this.contentType = contentType;
+        this.uploadLength = uploadLength;
+        this.expiresAt = expiresAt;
+    }
+
+    // Getters
+    public UUID getId() { return id; }
+    public Long getCreatedBy() { return createdBy; }
+    public String getFileName() { return fileName; }
+    public String getExtension() { return extension; }
+    public String getContentType() { return contentType; }
+    public Long getUploadLength() { return uploadLength; }
+    public OffsetDateTime getCreatedAt() { return createdAt; }
+    public OffsetDateTime getExpiresAt() { return expiresAt; }
+
+    public boolean isExpired() {
+        return expiresAt.isBefore(OffsetDateTime.now());
+    }
+}
@@ -0,0 +1,7 @@
+package com.uvg.wellnessapp.repository;
+
+import com.uvg.wellnessapp.domain.AiInsight;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface AiInsightRepository extends JpaRepository<AiInsight, Long> {
+}
@@ -0,0 +1,7 @@
+package com.uvg.wellnessapp.repository;
+
+import com.uvg.wellnessapp.domain.EmailOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+}
@@ -41,6 +41,10 @@ public interface MoodEntryRepository extends JpaRepository<MoodEntry, Long> {
     @Query("SELECT m FROM MoodEntry m WHERE m.userId = :userId AND m.createdAt >= :since ORDER BY m.createdAt DESC")
     List<MoodEntry> findRecentEntries(@Param("userId") Long userId, @Param("since") LocalDateTime since);
 
+    // Users with at least one entry since the given date (candidates for insight pre-generation)
+    @Query("SELECT DISTINCT m.userId FROM MoodEntry m WHERE m.createdAt >= :since")
+    List<Long> findActiveUserIds(@Param("since") LocalDateTime since);
+
     // Delete all entries for a user
     void deleteByUserId(Long userId);
 }
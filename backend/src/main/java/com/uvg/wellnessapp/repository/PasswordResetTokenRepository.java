@@ -6,7 +6,6 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
-import java.time.LocalDateTime;
 import java.util.Optional;
 
 public interface PasswordResetTokenRepository extends JpaRepository<PasswordResetToken, Long> {
@@ -15,11 +14,6 @@ public interface PasswordResetTokenRepository extends JpaRepository<PasswordRese
 
     Optional<PasswordResetToken> findByTokenAndUsedFalse(String token);
 
-    // Delete expired tokens (cleanup)
-    @Modifying
-    @Query("DELETE FROM PasswordResetToken t WHERE t.expiresAt < :now")
-    void deleteExpiredTokens(@Param("now") LocalDateTime now);
-
     // Invalidate all tokens for a user (when password is reset)
     @Modifying
     @Query("UPDATE PasswordResetToken t SET t.used = true WHERE t.userId = :userId")
@@ -0,0 +1,11 @@
+package com.uvg.wellnessapp.repository;
+
+import com.uvg.wellnessapp.domain.ResourceFile;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ResourceFileRepository extends JpaRepository<ResourceFile, Long> {
+
+    List<ResourceFile> findByResourceIdOrderByWidthAsc(Long resourceId);
+}
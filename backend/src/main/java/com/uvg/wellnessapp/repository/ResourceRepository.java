@@ -1,10 +1,19 @@
 package com.uvg.wellnessapp.repository;
 
 import com.uvg.wellnessapp.domain.ResourceItem;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.util.List;
+import java.util.Optional;
 
 public interface ResourceRepository extends JpaRepository<ResourceItem, Long> {
-  List<ResourceItem> findByStatusOrderByCreatedAtDesc(String status);
   List<ResourceItem> findAllByOrderByCreatedAtDesc();
+
+  // Row lock: derived files cannot be attached while the resource is being deleted
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT r FROM ResourceItem r WHERE r.id = :id")
+  Optional<ResourceItem> findByIdForUpdate(@Param("id") Long id);
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.uvg.wellnessapp.repository;
+
+import com.uvg.wellnessapp.domain.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, UUID> {
+
+    List<UploadSession> findTop100ByExpiresAtBefore(OffsetDateTime now);
+}
@@ -0,0 +1,146 @@
+package com.uvg.wellnessapp.security;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BCrypt on a dedicated, bounded pool.
+ * Request threads hand the hash to the pool and wait, so a credential-stuffing burst can
+ * use at most {@code threads} CPUs; once the queue is full further requests are shed with
+ * {@link PasswordHashingBusyException} instead of piling up.
+ * <p>
+ * The work factor is calibrated at startup to the configured target latency. Hashes made
+ * with a lower cost are reported by {@link #upgradeEncoding(String)} so login can rehash them.
+ */
+@Component
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private static final Logger log = LoggerFactory.getLogger(BoundedPasswordEncoder.class);
+
+    private final BCryptPasswordEncoder delegate;
+    private final ThreadPoolExecutor pool;
+    private final int cost;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final MeterRegistry meterRegistry;
+
+    public BoundedPasswordEncoder(
+            MeterRegistry meterRegistry,
+            @Value("${app.security.password.cost:0}") int fixedCost,
+            @Value("${app.security.password.target-ms:250}") long targetMs,
+            @Value("${app.security.password.min-cost:10}") int minCost,
+            @Value("${app.security.password.max-cost:14}") int maxCost,
+            @Value("${app.security.password.threads:0}") int threads,
+            @Value("${app.security.password.queue-capacity:64}") int queueCapacity
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.cost = fixedCost > 0 ? fixedCost : calibrate(targetMs, minCost, maxCost);
+        this.delegate = new BCryptPasswordEncoder(cost);
+
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "password-hash-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.encodeTimer = Timer.builder("auth.password.hash").tag("op", "encode").register(meterRegistry);
+        this.matchesTimer = Timer.builder("auth.password.hash").tag("op", "matches").register(meterRegistry);
+        Gauge.builder("auth.password.queue", pool, p -> p.getQueue().size()).register(meterRegistry);
+        Gauge.builder("auth.password.active", pool, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        Gauge.builder("auth.password.cost", this, e -> e.cost).register(meterRegistry);
+
+        log.info("Password hashing: BCrypt cost {} on {} threads, queue {}", cost, poolSize, queueCapacity);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return submit(() -> encodeTimer.record(() -> delegate.encode(rawPassword)));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(() -> matchesTimer.record(() -> delegate.matches(rawPassword, encodedPassword)));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = pool.submit(task);
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("auth.password.rejected").increment();
+            throw new PasswordHashingBusyException(retryAfterSeconds());
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    // Time for the current queue to drain, from the observed hash latency
+    private long retryAfterSeconds() {
+        double meanMs = matchesTimer.count() > 0 ? matchesTimer.mean(TimeUnit.MILLISECONDS) : 250;
+        double drainMs = meanMs * (pool.getQueue().size() + pool.getActiveCount()) / pool.getMaximumPoolSize();
+        return Math.max(1, (long) Math.ceil(drainMs / 1000));
+    }
+
+    /**
+     * Picks the cost whose hash time is closest to {@code targetMs} on this machine.
+     * Each extra cost unit doubles the time, so one measurement at the minimum is enough.
+     */
+    private static int calibrate(long targetMs, int minCost, int maxCost) {
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(minCost);
+        probe.encode("calibration"); // warm-up
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            probe.encode("calibration");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double ms = Math.max(0.01, best / 1_000_000.0);
+        int cost = minCost + (int) Math.round(Math.log(targetMs / ms) / Math.log(2));
+        cost = Math.max(minCost, Math.min(maxCost, cost));
+        log.info("BCrypt cost {} took {} ms here; calibrated cost {} for a {} ms target",
+                minCost, String.format("%.1f", ms), cost, targetMs);
+        return cost;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
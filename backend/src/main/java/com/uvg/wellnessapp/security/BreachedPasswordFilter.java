@@ -0,0 +1,128 @@
+package com.uvg.wellnessapp.security;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Read-only Bloom filter over the SHA-1 hashes of breached passwords, memory-mapped from a
+ * file built offline by {@link BreachedPasswordFilterBuilder}.
+ * <p>
+ * The bit array lives in the page cache rather than on the heap, and a lookup is one SHA-1
+ * plus {@code k} bit probes. SHA-1 output is already uniform, so the probe positions come
+ * straight from the digest by double hashing ({@code h1 + i * h2}). A match means "probably
+ * breached" with the false-positive rate the file was built for; a miss is certain.
+ * <p>
+ * File layout (big-endian): magic, version, k, reserved (4 ints), number of bits and number
+ * of entries (2 longs), then the bits as longs.
+ */
+public final class BreachedPasswordFilter {
+
+    static final int MAGIC = 0x57425046; // "WBPF"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+
+    private static volatile BreachedPasswordFilter installed;
+
+    private final MappedByteBuffer bits;
+    private final long numBits;
+    private final int numHashes;
+    private final long entries;
+
+    private BreachedPasswordFilter(MappedByteBuffer bits, long numBits, int numHashes, long entries) {
+        this.bits = bits;
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.entries = entries;
+    }
+
+    /** Maps a filter file; the mapping stays valid after the channel is closed. */
+    public static BreachedPasswordFilter open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected breached-password filter size: " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a breached-password filter: " + file);
+            }
+            int k = buffer.getInt(8);
+            long m = buffer.getLong(16);
+            long n = buffer.getLong(24);
+            if (k <= 0 || m <= 0 || m % 64 != 0 || HEADER_BYTES + m / 8 != size) {
+                throw new IOException("Corrupt breached-password filter header: " + file);
+            }
+            return new BreachedPasswordFilter(buffer, m, k, n);
+        }
+    }
+
+    /** Makes {@code filter} the one used by {@link #isBreached(String)}. */
+    public static void install(BreachedPasswordFilter filter) {
+        installed = filter;
+    }
+
+    /** True if a filter is installed and the password is (probably) in it. */
+    public static boolean isBreached(String password) {
+        BreachedPasswordFilter filter = installed;
+        return filter != null && filter.mightContain(sha1(password));
+    }
+
+    public boolean mightContain(byte[] sha1) {
+        long h1 = readLong(sha1, 0);
+        long h2 = readLong(sha1, 8);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = bitIndex(h1, h2, i, numBits);
+            long word = bits.getLong(HEADER_BYTES + (int) (bit >>> 6) * 8);
+            if ((word & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** False-positive rate expected from the filter's size and entry count. */
+    public double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) numHashes * entries / numBits), numHashes);
+    }
+
+    /** False-positive rate implied by the share of bits actually set; reads the whole array once. */
+    public double measuredFalsePositiveRate() {
+        long set = 0;
+        for (long offset = 0; offset < numBits / 8; offset += 8) {
+            set += Long.bitCount(bits.getLong(HEADER_BYTES + (int) offset));
+        }
+        return Math.pow((double) set / numBits, numHashes);
+    }
+
+    public long entries() { return entries; }
+    public long sizeBytes() { return numBits / 8; }
+    public int numHashes() { return numHashes; }
+
+    /** Position of the {@code i}-th probe; shared with the builder so both agree on the layout. */
+    static long bitIndex(long h1, long h2, int i, long numBits) {
+        // h2 forced odd so the probes do not collapse onto one bit
+        return Long.remainderUnsigned(h1 + i * (h2 | 1), numBits);
+    }
+
+    static long readLong(byte[] b, int offset) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (b[offset + i] & 0xFF);
+        }
+        return v;
+    }
+
+    static byte[] sha1(String password) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.uvg.wellnessapp.security;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+
+/**
+ * Offline builder for the {@link BreachedPasswordFilter} file, run at packaging time by the
+ * {@code breached-passwords} Maven profile.
+ * <p>
+ * The corpus is one entry per line: a 40-character SHA-1 hex digest, optionally followed by
+ * {@code :count} (the Have I Been Pwned download format), or with {@code --plain} a clear-text
+ * password. The file is read twice, once to size the filter and once to fill it, and the bits
+ * are written through a memory mapping, so the heap stays small for any corpus size.
+ * <pre>
+ * BreachedPasswordFilterBuilder &lt;corpus&gt; &lt;output&gt; [false-positive-rate] [--plain]
+ * </pre>
+ */
+public final class BreachedPasswordFilterBuilder {
+
+    private static final double DEFAULT_FPP = 0.001;
+    private static final int SAMPLE_PROBES = 1_000_000;
+
+    private BreachedPasswordFilterBuilder() {
+        // Command-line tool - no instantiation
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BreachedPasswordFilterBuilder <corpus> <output> [false-positive-rate] [--plain]");
+            System.exit(2);
+        }
+        Path corpus = Path.of(args[0]);
+        Path output = Path.of(args[1]);
+        double fpp = DEFAULT_FPP;
+        boolean plain = false;
+        for (int i = 2; i < args.length; i++) {
+            if ("--plain".equals(args[i])) {
+                plain = true;
+            } else {
+                fpp = Double.parseDouble(args[i]);
+            }
+        }
+
+        long start = System.nanoTime();
+        long n = countEntries(corpus);
+        if (n == 0) {
+            throw new IOException("Breached-password corpus is empty: " + corpus);
+        }
+        // Optimal size and probe count for n entries at the target rate, rounded to whole longs
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        m = (m + 63) / 64 * 64;
+        int k = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        if (BreachedPasswordFilter.HEADER_BYTES + m / 8 > Integer.MAX_VALUE) {
+            throw new IOException("Corpus too large for a single mapped filter: " + n + " entries");
+        }
+
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        Files.deleteIfExists(output);
+        long inserted = 0;
+        try (FileChannel channel = FileChannel.open(output,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, BreachedPasswordFilter.HEADER_BYTES + m / 8);
+            buffer.putInt(0, BreachedPasswordFilter.MAGIC);
+            buffer.putInt(4, BreachedPasswordFilter.VERSION);
+            buffer.putInt(8, k);
+            buffer.putLong(16, m);
+
+            HexFormat hex = HexFormat.of();
+            try (BufferedReader reader = Files.newBufferedReader(corpus, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    byte[] sha1 = parse(line, plain, hex);
+                    if (sha1 == null) {
+                        continue;
+                    }
+                    long h1 = BreachedPasswordFilter.readLong(sha1, 0);
+                    long h2 = BreachedPasswordFilter.readLong(sha1, 8);
+                    for (int i = 0; i < k; i++) {
+                        long bit = BreachedPasswordFilter.bitIndex(h1, h2, i, m);
+                        int offset = BreachedPasswordFilter.HEADER_BYTES + (int) (bit >>> 6) * 8;
+                        buffer.putLong(offset, buffer.getLong(offset) | (1L << (bit & 63)));
+                    }
+                    inserted++;
+                }
+            }
+            buffer.putLong(24, inserted);
+            buffer.force();
+        }
+        long buildMs = (System.nanoTime() - start) / 1_000_000;
+
+        // Random digests are almost surely not in the corpus, so every hit is a false positive
+        BreachedPasswordFilter filter = BreachedPasswordFilter.open(output);
+        SecureRandom random = new SecureRandom();
+        byte[] probe = new byte[20];
+        int hits = 0;
+        long probeStart = System.nanoTime();
+        for (int i = 0; i < SAMPLE_PROBES; i++) {
+            random.nextBytes(probe);
+            if (filter.mightContain(probe)) {
+                hits++;
+            }
+        }
+        double nsPerLookup = (double) (System.nanoTime() - probeStart) / SAMPLE_PROBES;
+
+        System.out.printf("Breached-password filter: %d entries, %d bytes, k=%d, built in %d ms%n",
+                inserted, m / 8, k, buildMs);
+        System.out.printf("False-positive rate: target %.5f, expected %.5f, observed %.5f (%d random probes, %.0f ns each)%n",
+                fpp, filter.expectedFalsePositiveRate(), (double) hits / SAMPLE_PROBES, SAMPLE_PROBES, nsPerLookup);
+    }
+
+    private static long countEntries(Path corpus) throws IOException {
+        try (var lines = Files.lines(corpus, StandardCharsets.UTF_8)) {
+            return lines.filter(l -> !l.isBlank()).count();
+        }
+    }
+
+    private static byte[] parse(String line, boolean plain, HexFormat hex) {
+        if (line.isBlank()) {
+            return null;
+        }
+        if (plain) {
+            return BreachedPasswordFilter.sha1(line);
+        }
+        int end = line.indexOf(':');
+        String digest = (end < 0 ? line : line.substring(0, end)).trim();
+        if (digest.length() != 40) {
+            return null;
+        }
+        try {
+            return hex.parseHex(digest);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
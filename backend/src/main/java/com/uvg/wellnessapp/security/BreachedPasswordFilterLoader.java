@@ -0,0 +1,72 @@
+package com.uvg.wellnessapp.security;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Installs the breached-password filter used by {@link PasswordValidator} at startup.
+ * The file comes from {@code app.security.password.breached-file}, or else from
+ * {@code breached-passwords.bloom} on the classpath (copied out of the jar once so it can be
+ * mapped). Without either, only the built-in weak-password list applies.
+ */
+@Component
+public class BreachedPasswordFilterLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(BreachedPasswordFilterLoader.class);
+
+    static final String CLASSPATH_FILE = "breached-passwords.bloom";
+
+    public BreachedPasswordFilterLoader(
+            MeterRegistry meterRegistry,
+            @Value("${app.security.password.breached-file:}") String breachedFile
+    ) {
+        long start = System.nanoTime();
+        BreachedPasswordFilter filter;
+        try {
+            Path path = breachedFile.isBlank() ? extractFromClasspath() : Path.of(breachedFile);
+            if (path == null) {
+                log.info("No breached-password filter configured; using the built-in weak-password list only");
+                return;
+            }
+            filter = BreachedPasswordFilter.open(path);
+        } catch (IOException e) {
+            log.error("Could not load breached-password filter: {}", e.getMessage());
+            return;
+        }
+        long loadMs = (System.nanoTime() - start) / 1_000_000;
+
+        BreachedPasswordFilter.install(filter);
+        Gauge.builder("auth.password.breached.entries", filter, BreachedPasswordFilter::entries).register(meterRegistry);
+        log.info("Breached-password filter loaded in {} ms: {} entries, {} KiB off-heap, k={}, false-positive rate {} expected / {} from fill",
+                loadMs, filter.entries(), filter.sizeBytes() / 1024, filter.numHashes(),
+                String.format("%.5f", filter.expectedFalsePositiveRate()),
+                String.format("%.5f", filter.measuredFalsePositiveRate()));
+    }
+
+    private static Path extractFromClasspath() throws IOException {
+        ClassPathResource resource = new ClassPathResource(CLASSPATH_FILE);
+        if (!resource.exists()) {
+            return null;
+        }
+        if (resource.isFile()) {
+            return resource.getFile().toPath();
+        }
+        Path copy = Files.createTempFile("breached-passwords", ".bloom");
+        copy.toFile().deleteOnExit();
+        try (InputStream in = resource.getInputStream()) {
+            Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return copy;
+    }
+}
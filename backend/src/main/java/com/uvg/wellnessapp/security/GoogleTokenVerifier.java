@@ -2,24 +2,60 @@ package com.uvg.wellnessapp.security;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.googleapis.auth.oauth2.GoogleOAuthConstants;
+import com.google.api.client.googleapis.auth.oauth2.GooglePublicKeysManager;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
 import com.google.api.client.json.gson.GsonFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.time.Instant;
 import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Verifies Google ID tokens with a single verifier.
+ * The HTTP transport and the public-key cache are shared by every login; the keys are
+ * refreshed in the background before the {@code Cache-Control} max-age of the certificate
+ * response runs out, so sign-ins do not wait on the certificate endpoint.
+ */
 @Service
 public class GoogleTokenVerifier {
 
     private static final Logger log = LoggerFactory.getLogger(GoogleTokenVerifier.class);
 
-    @Value("${google.client-id}")
-    private String googleClientId;
+    private final GooglePublicKeysManager publicKeys;
+    private final GoogleIdTokenVerifier verifier;
+
+    // Recently verified tokens by SHA-256, so retried or double-submitted logins skip the RSA check
+    private final ConcurrentHashMap<String, CachedPayload> verified = new ConcurrentHashMap<>();
+    private final long cacheTtlMs;
+    private final int cacheSize;
+
+    private record CachedPayload(GoogleIdToken.Payload payload, long expiresAt) {}
+
+    public GoogleTokenVerifier(
+            @Value("${google.client-id}") String googleClientId,
+            @Value("${google.certs-url:" + GoogleOAuthConstants.DEFAULT_PUBLIC_CERTS_ENCODED_URL + "}") String certsUrl,
+            @Value("${google.token-cache.ttl-seconds:300}") long cacheTtlSeconds,
+            @Value("${google.token-cache.size:1000}") int cacheSize
+    ) throws GeneralSecurityException, IOException {
+        this.publicKeys = new GooglePublicKeysManager.Builder(
+                GoogleNetHttpTransport.newTrustedTransport(),
+                GsonFactory.getDefaultInstance())
+                .setPublicCertsEncodedUrl(certsUrl)
+                .build();
+        this.verifier = new GoogleIdTokenVerifier.Builder(publicKeys)
+                .setAudience(Collections.singletonList(googleClientId))
+                .build();
+        this.cacheTtlMs = cacheTtlSeconds * 1000;
+        this.cacheSize = cacheSize;
+    }
 
     /**
      * Verifies a Google ID token and returns the payload if valid.
@@ -33,13 +69,17 @@ public class GoogleTokenVerifier {
             return null;
         }
 
-        try {
-            GoogleIdTokenVerifier verifier = new GoogleIdTokenVerifier.Builder(
-                    GoogleNetHttpTransport.newTrustedTransport(),
-                    GsonFactory.getDefaultInstance())
-                    .setAudience(Collections.singletonList(googleClientId))
-                    .build();
+        long now = System.currentTimeMillis();
+        String cacheKey = TokenHash.sha256Hex(idTokenString);
+        CachedPayload cached = verified.get(cacheKey);
+        if (cached != null) {
+            if (now < cached.expiresAt()) {
+                return cached.payload();
+            }
+            verified.remove(cacheKey);
+        }
 
+        try {
             GoogleIdToken idToken = verifier.verify(idTokenString);
 
             if (idToken == null) {
@@ -48,6 +88,7 @@ public class GoogleTokenVerifier {
             }
 
             log.debug("Google token verified successfully for user: {}", idToken.getPayload().getEmail());
+            remember(cacheKey, idToken.getPayload(), now);
             return idToken.getPayload();
 
         } catch (GeneralSecurityException e) {
@@ -64,4 +105,37 @@ public class GoogleTokenVerifier {
             return null;
         }
     }
+
+    /**
+     * Keeps the public keys warm. {@link GooglePublicKeysManager#getPublicKeys()} only goes to
+     * the network when the cached keys are within five minutes of their max-age, so this runs
+     * often and is cheap; it also drops expired entries from the verified-token cache.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${google.keys-refresh-check-ms:60000}")
+    public void refreshPublicKeys() {
+        try {
+            long before = publicKeys.getExpirationTimeMilliseconds();
+            publicKeys.getPublicKeys();
+            long after = publicKeys.getExpirationTimeMilliseconds();
+            if (after != before) {
+                log.info("Google public keys refreshed, valid until {}", Instant.ofEpochMilli(after));
+            }
+        } catch (GeneralSecurityException | IOException e) {
+            log.warn("Could not refresh Google public keys: {}", e.getMessage());
+        }
+
+        long now = System.currentTimeMillis();
+        verified.values().removeIf(c -> now >= c.expiresAt());
+    }
+
+    private void remember(String cacheKey, GoogleIdToken.Payload payload, long now) {
+        if (verified.size() >= cacheSize) {
+            return;
+        }
+        long expiresAt = now + cacheTtlMs;
+        if (payload.getExpirationTimeSeconds() != null) {
+            expiresAt = Math.min(expiresAt, payload.getExpirationTimeSeconds() * 1000);
+        }
+        verified.put(cacheKey, new CachedPayload(payload, expiresAt));
+    }
 }
@@ -0,0 +1,37 @@
+package com.uvg.wellnessapp.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node-local buckets: each instance enforces the configured limits on its own.
+ */
+@Component
+@ConditionalOnProperty(name = "app.security.rate-limit.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryRateLimitStore implements RateLimitStore {
+
+    private final ConcurrentHashMap<RateLimitPolicy, TokenBucketLimiter> limiters = new ConcurrentHashMap<>();
+    private final int maxKeys;
+
+    public InMemoryRateLimitStore(@Value("${app.security.rate-limit.max-keys:100000}") int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    @Override
+    public long tryAcquire(RateLimitPolicy policy, Object key) {
+        return limiters.computeIfAbsent(policy, p -> new TokenBucketLimiter(p, maxKeys)).tryAcquire(key);
+    }
+
+    @Override
+    public int evictIdle(Collection<RateLimitPolicy> policies) {
+        int removed = 0;
+        for (TokenBucketLimiter limiter : limiters.values()) {
+            removed += limiter.evictFull();
+        }
+        return removed;
+    }
+}
@@ -25,9 +25,11 @@ public class JwtAuthFilter extends OncePerRequestFilter {
   private static final Logger log = LoggerFactory.getLogger(JwtAuthFilter.class);
 
   private final JwtService jwt;
+  private final TokenRevocationList revocations;
 
-  public JwtAuthFilter(JwtService jwt) {
+  public JwtAuthFilter(JwtService jwt, TokenRevocationList revocations) {
     this.jwt = jwt;
+    this.revocations = revocations;
   }
 
   @Override
@@ -40,9 +42,16 @@ public class JwtAuthFilter extends OncePerRequestFilter {
       String token = auth.substring(7);
 
       try {
-        Long userId = jwt.getUserId(token);
-        String email = jwt.getEmail(token);
-        String role = jwt.getRole(token);
+        VerifiedToken verified = jwt.verify(token);
+        if (revocations.isRevoked(verified)) {
+          // Revoked (password change, logout...) - request proceeds without authentication
+          log.debug("Revoked JWT received for user {}", verified.userId());
+          filterChain.doFilter(request, response);
+          return;
+        }
+        Long userId = verified.userId();
+        String email = verified.email();
+        String role = verified.role();
 
         // Si no viene el rol, lo asumimos USER
         String springRole = "ROLE_" + (role != null ? role : "USER");
@@ -3,13 +3,17 @@ package com.uvg.wellnessapp.security;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.time.Instant;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class JwtService {
@@ -17,12 +21,22 @@ public class JwtService {
   private final Key key;
   private final int expMinutes;
 
+  // Immutable and thread-safe: built once instead of per parse
+  private final JwtParser parser;
+
+  // Verified tokens by SHA-256 of the token, each entry valid until the token's exp
+  private final ConcurrentHashMap<String, VerifiedToken> verified = new ConcurrentHashMap<>();
+  private final int cacheSize;
+
   public JwtService(
       @Value("${app.security.jwt.secret}") String secret,
-      @Value("${app.security.jwt.expMinutes}") int expMinutes
+      @Value("${app.security.jwt.expMinutes}") int expMinutes,
+      @Value("${app.security.jwt.cache-size:10000}") int cacheSize
   ) {
     this.key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
     this.expMinutes = expMinutes;
+    this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+    this.cacheSize = cacheSize;
   }
 
   public String generateToken(Long userId, String email) {
@@ -31,24 +45,75 @@ public class JwtService {
     return Jwts.builder()
         .setSubject(String.valueOf(userId))
         .addClaims(Map.of("email", email))
+        .setId(UUID.randomUUID().toString())
         .setIssuedAt(Date.from(now))
         .setExpiration(Date.from(exp))
         .signWith(key, SignatureAlgorithm.HS256)
         .compact();
   }
 
+  /** Lifetime of access tokens, reported to clients so they can refresh ahead of expiry. */
+  public int getExpMinutes() {
+    return expMinutes;
+  }
+
   public Jws<Claims> parse(String token) {
-    return Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
+    return parser.parseClaimsJws(token);
+  }
+
+  /**
+   * Verifies signature and expiry once and returns the claims the app uses.
+   * Repeated calls with the same token are served from a bounded cache until the token expires.
+   *
+   * @throws JwtException if the token is malformed, tampered with or expired
+   */
+  public VerifiedToken verify(String token) {
+    Instant now = Instant.now();
+    String cacheKey = TokenHash.sha256Hex(token);
+    VerifiedToken cached = verified.get(cacheKey);
+    if (cached != null) {
+      if (!cached.isExpired(now)) {
+        return cached;
+      }
+      verified.remove(cacheKey);
+    }
+
+    Claims claims = parse(token).getBody();
+    Object email = claims.get("email");
+    Object role = claims.get("role");
+    VerifiedToken result = new VerifiedToken(
+        Long.valueOf(claims.getSubject()),
+        email == null ? null : email.toString(),
+        role == null ? null : role.toString(),
+        claims.getId(),
+        claims.getIssuedAt() == null ? null : claims.getIssuedAt().toInstant(),
+        claims.getExpiration().toInstant());
+
+    // Expired entries go in the scheduled sweep; when full, make room by dropping any one entry
+    if (verified.size() >= cacheSize) {
+      Iterator<String> it = verified.keySet().iterator();
+      if (it.hasNext()) {
+        it.next();
+        it.remove();
+      }
+    }
+    verified.put(cacheKey, result);
+    return result;
+  }
+
+  @Scheduled(fixedDelay = 60_000)
+  public void evictExpired() {
+    Instant now = Instant.now();
+    verified.values().removeIf(v -> v.isExpired(now));
   }
 
   public Long getUserId(String token) {
-    return Long.valueOf(parse(token).getBody().getSubject());
+    return verify(token).userId();
   }
 
 
   public String getEmail(String token) {
-    Object e = parse(token).getBody().get("email");
-    return e == null ? null : e.toString();
+    return verify(token).email();
   }
 
 public String generateToken(Long userId, String email, String role) {
@@ -57,6 +122,7 @@ public String generateToken(Long userId, String email, String role) {
   return Jwts.builder()
       .setSubject(String.valueOf(userId))
       .addClaims(Map.of("email", email, "role", role))     // <--- rol en el token
+      .setId(UUID.randomUUID().toString())                  // jti, for revoking this token alone
       .setIssuedAt(Date.from(now))
       .setExpiration(Date.from(exp))
       .signWith(key, SignatureAlgorithm.HS256)
@@ -64,7 +130,6 @@ public String generateToken(Long userId, String email, String role) {
 }
 
 public String getRole(String token) {
-  Object r = parse(token).getBody().get("role");
-  return r == null ? null : r.toString();
+  return verify(token).role();
 }
 }
@@ -0,0 +1,19 @@
+package com.uvg.wellnessapp.security;
+
+/**
+ * Thrown when the password-hashing pool is saturated and the request is shed.
+ * Mapped to 503 with {@code Retry-After} by the global exception handler.
+ */
+public class PasswordHashingBusyException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public PasswordHashingBusyException(long retryAfterSeconds) {
+        super("Password service is busy, please retry shortly");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
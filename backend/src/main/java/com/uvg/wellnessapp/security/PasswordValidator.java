@@ -76,6 +76,11 @@ public final class PasswordValidator {
             }
         }
 
+        // Known breached passwords (see BreachedPasswordFilterLoader)
+        if (BreachedPasswordFilter.isBreached(password)) {
+            errors.add("Password has appeared in a data breach; please choose a different one");
+        }
+
         return errors;
     }
 
@@ -0,0 +1,159 @@
+package com.uvg.wellnessapp.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Buckets shared by every node through the UNLOGGED {@code rate_limit_buckets} table.
+ * <p>
+ * Refill and take happen in one atomic upsert ({@code INSERT ... ON CONFLICT DO UPDATE ... RETURNING}),
+ * timed with the database clock. To save round trips a node leases a few tokens at a time
+ * and hands them out locally; leases are short-lived, and unused leased tokens are simply
+ * lost, so the cluster never exceeds the configured budget. Refusals are also remembered
+ * locally until the bucket can grant again.
+ * <p>
+ * If the database is unreachable the node falls back to its own in-memory buckets.
+ */
+@Component
+@ConditionalOnProperty(name = "app.security.rate-limit.store", havingValue = "postgres")
+public class PostgresRateLimitStore implements RateLimitStore {
+
+    private static final Logger log = LoggerFactory.getLogger(PostgresRateLimitStore.class);
+
+    // The refilled balance is computed from the old row in both SET expressions
+    private static final String TAKE_SQL = """
+            INSERT INTO rate_limit_buckets AS b (policy, bucket_key, tokens, granted, updated_at)
+            VALUES (:policy, :key, :capacity - :lease, :lease, now())
+            ON CONFLICT (policy, bucket_key) DO UPDATE SET
+                granted = LEAST(:lease, FLOOR(LEAST(:capacity,
+                        b.tokens + EXTRACT(EPOCH FROM now() - b.updated_at) * :rate)))::int,
+                tokens = LEAST(:capacity, b.tokens + EXTRACT(EPOCH FROM now() - b.updated_at) * :rate)
+                        - LEAST(:lease, FLOOR(LEAST(:capacity,
+                        b.tokens + EXTRACT(EPOCH FROM now() - b.updated_at) * :rate))),
+                updated_at = now()
+            RETURNING granted, tokens""";
+
+    private static final String EVICT_SQL =
+            "DELETE FROM rate_limit_buckets WHERE updated_at < now() - make_interval(secs => :seconds)";
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final int maxLease;
+    private final long leaseMs;
+    private final int maxKeys;
+
+    private final ConcurrentHashMap<RateLimitPolicy, ConcurrentHashMap<Object, Lease>> leases = new ConcurrentHashMap<>();
+    private final InMemoryRateLimitStore fallback;
+    private volatile long lastFailureLog;
+
+    public PostgresRateLimitStore(NamedParameterJdbcTemplate jdbc,
+                                  @Value("${app.security.rate-limit.postgres.max-lease:5}") int maxLease,
+                                  @Value("${app.security.rate-limit.postgres.lease-ms:1000}") long leaseMs,
+                                  @Value("${app.security.rate-limit.max-keys:100000}") int maxKeys) {
+        this.jdbc = jdbc;
+        this.maxLease = Math.max(1, maxLease);
+        this.leaseMs = leaseMs;
+        this.maxKeys = maxKeys;
+        this.fallback = new InMemoryRateLimitStore(maxKeys);
+        log.info("Rate limits shared through Postgres (lease up to {} tokens for {} ms)", this.maxLease, leaseMs);
+    }
+
+    @Override
+    public long tryAcquire(RateLimitPolicy policy, Object key) {
+        ConcurrentHashMap<Object, Lease> byKey = leases.computeIfAbsent(policy, p -> new ConcurrentHashMap<>());
+        Lease lease = byKey.get(key);
+        if (lease == null) {
+            // Too many local leases: go to the database one token at a time
+            lease = byKey.size() < maxKeys ? byKey.computeIfAbsent(key, k -> new Lease()) : new Lease();
+        }
+
+        synchronized (lease) {
+            long now = System.currentTimeMillis();
+            if (now < lease.deniedUntil) {
+                return -(lease.deniedUntil - now);
+            }
+            if (lease.remaining == 0 || now >= lease.expiresAt) {
+                try {
+                    refill(policy, key, lease, now);
+                } catch (DataAccessException e) {
+                    logFailure(e);
+                    return fallback.tryAcquire(policy, key);
+                }
+                if (lease.remaining == 0) {
+                    return -(lease.deniedUntil - now);
+                }
+            }
+            lease.remaining--;
+            return lease.remaining + lease.sharedRemaining;
+        }
+    }
+
+    private void refill(RateLimitPolicy policy, Object key, Lease lease, long now) {
+        // Small buckets (auth) lease one token so the shared limit stays exact
+        int leaseSize = Math.min(maxLease, Math.max(1, policy.capacity() / 10));
+        double ratePerSecond = policy.perMinute() / 60.0;
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("policy", policy.name())
+                .addValue("key", key instanceof Long ? "u:" + key : key.toString())
+                .addValue("capacity", (double) policy.capacity())
+                .addValue("lease", leaseSize)
+                .addValue("rate", ratePerSecond);
+
+        jdbc.query(TAKE_SQL, params, rs -> {
+            int granted = rs.getInt("granted");
+            double tokens = rs.getDouble("tokens");
+            lease.remaining = granted;
+            lease.sharedRemaining = (long) tokens;
+            lease.expiresAt = now + leaseMs;
+            lease.deniedUntil = granted > 0 ? 0 : now + Math.max(1, (long) Math.ceil((1 - tokens) / ratePerSecond * 1000));
+        });
+    }
+
+    @Override
+    public int evictIdle(Collection<RateLimitPolicy> policies) {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (ConcurrentHashMap<Object, Lease> byKey : leases.values()) {
+            int before = byKey.size();
+            byKey.values().removeIf(l -> now >= l.expiresAt && now >= l.deniedUntil);
+            removed += before - byKey.size();
+        }
+        removed += fallback.evictIdle(policies);
+
+        // A bucket idle for its whole window is full again, so the row carries no state
+        int maxWindow = 0;
+        for (RateLimitPolicy p : policies) {
+            maxWindow = Math.max(maxWindow, p.windowSeconds());
+        }
+        try {
+            removed += jdbc.update(EVICT_SQL, new MapSqlParameterSource("seconds", maxWindow));
+        } catch (DataAccessException e) {
+            logFailure(e);
+        }
+        return removed;
+    }
+
+    private void logFailure(DataAccessException e) {
+        long now = System.currentTimeMillis();
+        if (now - lastFailureLog > 60_000) {
+            lastFailureLog = now;
+            log.warn("Shared rate limit store unavailable, using local buckets: {}", e.getMessage());
+        }
+    }
+
+    private static final class Lease {
+        int remaining;
+        long sharedRemaining;
+        long expiresAt;
+        long deniedUntil;
+    }
+}
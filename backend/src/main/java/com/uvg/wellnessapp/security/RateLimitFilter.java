@@ -8,103 +8,150 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.time.Instant;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * Rate limiting filter for authentication endpoints to prevent brute force attacks.
- * Uses a sliding window algorithm with in-memory storage.
+ * Token-bucket rate limiting for every API route.
+ * Routes are grouped into policies (auth, AI, writes, reads); anonymous callers are keyed
+ * by IP and, for the per-user policies, authenticated callers by user id, which is why this
+ * filter runs after {@link JwtAuthFilter}. Responses carry {@code RateLimit-*} headers and
+ * refused requests get a 429 with {@code Retry-After}. Buckets live in a {@link RateLimitStore},
+ * local to the node or shared by the cluster. {@code X-Forwarded-For} and {@code X-Real-IP} are
+ * only believed when the connection comes from one of the {@code trusted-proxies}.
  */
 @Component
 public class RateLimitFilter extends OncePerRequestFilter {
 
     private static final Logger log = LoggerFactory.getLogger(RateLimitFilter.class);
 
-    // Store request counts per IP: IP -> (timestamp, count)
-    private final ConcurrentHashMap<String, RequestCounter> requestCounts = new ConcurrentHashMap<>();
-
-    private final int maxRequests;
-    private final int windowMinutes;
-
-    // Scheduled cleanup of old entries
-    private final ScheduledExecutorService cleanupExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final RateLimitStore store;
+    private final RateLimitPolicy auth;
+    private final RateLimitPolicy ai;
+    private final RateLimitPolicy writes;
+    private final RateLimitPolicy reads;
+    private final List<RateLimitPolicy> policies;
+    private final List<IpAddressMatcher> trustedProxies;
 
     public RateLimitFilter(
+            RateLimitStore store,
             @Value("${app.security.rate-limit.max-requests:10}") int maxRequests,
-            @Value("${app.security.rate-limit.window-minutes:1}") int windowMinutes
+            @Value("${app.security.rate-limit.window-minutes:1}") int windowMinutes,
+            @Value("${app.security.rate-limit.ai.capacity:10}") int aiCapacity,
+            @Value("${app.security.rate-limit.ai.per-minute:20}") int aiPerMinute,
+            @Value("${app.security.rate-limit.writes.capacity:30}") int writesCapacity,
+            @Value("${app.security.rate-limit.writes.per-minute:60}") int writesPerMinute,
+            @Value("${app.security.rate-limit.reads.capacity:120}") int readsCapacity,
+            @Value("${app.security.rate-limit.reads.per-minute:600}") int readsPerMinute,
+            @Value("${app.security.rate-limit.trusted-proxies:127.0.0.0/8,::1,10.0.0.0/8,172.16.0.0/12,192.168.0.0/16}") String trustedProxies
     ) {
-        this.maxRequests = maxRequests;
-        this.windowMinutes = windowMinutes;
-
-        // Schedule cleanup every 5 minutes
-        cleanupExecutor.scheduleAtFixedRate(this::cleanupOldEntries, 5, 5, TimeUnit.MINUTES);
-
-        log.info("Rate limiter initialized: {} requests per {} minute(s) for auth endpoints", maxRequests, windowMinutes);
+        this.store = store;
+        // Auth keeps the old budget: maxRequests per window, allowed as a burst
+        this.auth = new RateLimitPolicy("auth", maxRequests, Math.max(1, maxRequests / Math.max(1, windowMinutes)), false);
+        this.ai = new RateLimitPolicy("ai", aiCapacity, aiPerMinute, true);
+        this.writes = new RateLimitPolicy("writes", writesCapacity, writesPerMinute, true);
+        this.reads = new RateLimitPolicy("reads", readsCapacity, readsPerMinute, true);
+        this.policies = List.of(auth, ai, writes, reads);
+        this.trustedProxies = Arrays.stream(trustedProxies.split(","))
+                .map(String::trim)
+                .filter(p -> !p.isEmpty())
+                .map(IpAddressMatcher::new)
+                .toList();
+
+        log.info("Rate limiter initialized: auth {}/{}min, ai {}+{}/min, writes {}+{}/min, reads {}+{}/min ({})",
+                maxRequests, windowMinutes, aiCapacity, aiPerMinute, writesCapacity, writesPerMinute,
+                readsCapacity, readsPerMinute, store.getClass().getSimpleName());
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
 
-        String path = request.getRequestURI();
-
-        // Only rate limit auth endpoints (login, register, google)
-        if (!path.startsWith("/api/v1/auth/")) {
+        RateLimitPolicy policy = policyFor(request);
+        if (policy == null) {
             filterChain.doFilter(request, response);
             return;
         }
 
-        // Skip OPTIONS requests (CORS preflight)
-        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
-            filterChain.doFilter(request, response);
-            return;
-        }
+        Object key = policy.perUser() ? userKey(request) : getClientIp(request);
+        long result = store.tryAcquire(policy, key);
 
-        String clientIp = getClientIp(request);
-        String rateLimitKey = clientIp + ":" + path;
+        response.setIntHeader("RateLimit-Limit", policy.capacity());
+        response.setHeader("RateLimit-Policy", policy.capacity() + ";w=" + policy.windowSeconds());
 
-        if (isRateLimited(rateLimitKey)) {
-            log.warn("Rate limit exceeded for IP {} on endpoint {}", clientIp, path);
+        if (result < 0) {
+            long retryAfterSeconds = (-result + 999) / 1000;
+            log.warn("Rate limit exceeded for {} on {} ({} policy)", key, request.getRequestURI(), policy.name());
+            response.setIntHeader("RateLimit-Remaining", 0);
+            response.setHeader("RateLimit-Reset", String.valueOf(retryAfterSeconds));
+            response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
             response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
             response.setContentType("application/json");
-            response.getWriter().write("{\"error\":\"Too many requests. Please try again later.\",\"retryAfterSeconds\":" + (windowMinutes * 60) + "}");
+            response.getWriter().write("{\"error\":\"Too many requests. Please try again later.\",\"retryAfterSeconds\":" + retryAfterSeconds + "}");
             return;
         }
 
+        response.setHeader("RateLimit-Remaining", String.valueOf(result));
+        // Seconds until the bucket is full again
+        long missing = policy.capacity() - result - 1;
+        response.setHeader("RateLimit-Reset", String.valueOf(Math.max(0, (missing * 60 + policy.perMinute() - 1) / policy.perMinute())));
+
         filterChain.doFilter(request, response);
     }
 
-    private boolean isRateLimited(String key) {
-        Instant now = Instant.now();
-        Instant windowStart = now.minusSeconds(windowMinutes * 60L);
-
-        RequestCounter counter = requestCounts.compute(key, (k, existing) -> {
-            if (existing == null || existing.windowStart.isBefore(windowStart)) {
-                // Start a new window
-                return new RequestCounter(now, 1);
-            } else {
-                // Increment existing counter
-                existing.count++;
-                return existing;
-            }
-        });
+    private RateLimitPolicy policyFor(HttpServletRequest request) {
+        // Skip OPTIONS requests (CORS preflight)
+        String method = request.getMethod();
+        if ("OPTIONS".equals(method)) {
+            return null;
+        }
 
-        return counter.count > maxRequests;
+        String path = request.getRequestURI();
+        if (!path.startsWith("/api/")) {
+            return null;
+        }
+        if (path.startsWith("/api/v1/auth/")) {
+            return auth;
+        }
+        if (path.startsWith("/api/v1/ai/")) {
+            return ai;
+        }
+        // Chunks of a resumable upload: creating the upload is the write, its chunks are bounded by its length
+        if ("PATCH".equals(method) && path.startsWith("/api/v1/uploads/")) {
+            return reads;
+        }
+        return "GET".equals(method) || "HEAD".equals(method) ? reads : writes;
+    }
+
+    private Object userKey(HttpServletRequest request) {
+        Long userId = AuthUtils.resolveUserId(null);
+        return userId != null ? userId : getClientIp(request);
     }
 
     private String getClientIp(HttpServletRequest request) {
-        // Check for forwarded IP (when behind proxy/load balancer)
+        String remoteAddr = request.getRemoteAddr();
+        // Anyone can send these headers; only a proxy we run can vouch for them
+        if (!isTrustedProxy(remoteAddr)) {
+            return remoteAddr;
+        }
+
         String forwardedFor = request.getHeader("X-Forwarded-For");
         if (forwardedFor != null && !forwardedFor.isEmpty()) {
-            // Take the first IP in the chain (original client)
-            return forwardedFor.split(",")[0].trim();
+            // Each proxy appends the address it saw: the client is the last hop that is not one of ours
+            String[] hops = forwardedFor.split(",");
+            for (int i = hops.length - 1; i >= 0; i--) {
+                String hop = hops[i].trim();
+                if (!hop.isEmpty() && !isTrustedProxy(hop)) {
+                    return hop;
+                }
+            }
+            return hops[0].trim();
         }
 
         String realIp = request.getHeader("X-Real-IP");
@@ -112,30 +159,28 @@ public class RateLimitFilter extends OncePerRequestFilter {
             return realIp.trim();
         }
 
-        return request.getRemoteAddr();
+        return remoteAddr;
     }
 
-    private void cleanupOldEntries() {
-        Instant cutoff = Instant.now().minusSeconds(windowMinutes * 60L * 2); // Keep entries for 2x window
-        int removed = 0;
-        for (var entry : requestCounts.entrySet()) {
-            if (entry.getValue().windowStart.isBefore(cutoff)) {
-                requestCounts.remove(entry.getKey());
-                removed++;
+    private boolean isTrustedProxy(String address) {
+        for (IpAddressMatcher proxy : trustedProxies) {
+            try {
+                if (proxy.matches(address)) {
+                    return true;
+                }
+            } catch (IllegalArgumentException e) {
+                // Not an IP address (hostnames are never resolved here)
+                return false;
             }
         }
-        if (removed > 0) {
-            log.debug("Rate limiter cleanup: removed {} old entries", removed);
-        }
+        return false;
     }
 
-    private static class RequestCounter {
-        final Instant windowStart;
-        int count;
-
-        RequestCounter(Instant windowStart, int count) {
-            this.windowStart = windowStart;
-            this.count = count;
+    @Scheduled(fixedDelay = 300_000)
+    public void cleanupFullBuckets() {
+        int removed = store.evictIdle(policies);
+        if (removed > 0) {
+            log.debug("Rate limiter cleanup: removed {} idle buckets", removed);
         }
     }
 }
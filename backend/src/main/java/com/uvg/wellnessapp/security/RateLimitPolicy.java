@@ -0,0 +1,26 @@
+package com.uvg.wellnessapp.security;
+
+/**
+ * Token-bucket parameters for a group of routes.
+ *
+ * @param name      label used in logs and the {@code RateLimit-Policy} header
+ * @param capacity  burst size (bucket capacity, in requests)
+ * @param perMinute sustained refill rate
+ * @param perUser   key the bucket by authenticated user id (falls back to IP for anonymous requests)
+ */
+public record RateLimitPolicy(String name, int capacity, int perMinute, boolean perUser) {
+
+    public RateLimitPolicy {
+        if (capacity < 1 || capacity > TokenBucketLimiter.MAX_CAPACITY) {
+            throw new IllegalArgumentException("Rate limit capacity out of range for " + name + ": " + capacity);
+        }
+        if (perMinute < 1) {
+            throw new IllegalArgumentException("Rate limit refill must be positive for " + name);
+        }
+    }
+
+    /** Seconds needed to refill the whole bucket, advertised as the policy window. */
+    public int windowSeconds() {
+        return (int) Math.max(1, (capacity * 60L + perMinute - 1) / perMinute);
+    }
+}
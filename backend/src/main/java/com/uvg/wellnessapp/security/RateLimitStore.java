@@ -0,0 +1,27 @@
+package com.uvg.wellnessapp.security;
+
+import java.util.Collection;
+
+/**
+ * Where {@link RateLimitFilter} keeps its token buckets.
+ * The in-memory store limits each node on its own; the Postgres store shares the
+ * buckets between every node behind the load balancer.
+ * Selected with {@code app.security.rate-limit.store} ({@code memory} or {@code postgres}).
+ */
+public interface RateLimitStore {
+
+    /**
+     * Takes one token from the bucket of {@code key} under {@code policy}.
+     *
+     * @return the whole tokens left (&ge; 0) when allowed, or minus the milliseconds
+     *         until a token is available when refused
+     */
+    long tryAcquire(RateLimitPolicy policy, Object key);
+
+    /**
+     * Forgets buckets idle long enough to have refilled completely.
+     *
+     * @return number of buckets removed
+     */
+    int evictIdle(Collection<RateLimitPolicy> policies);
+}
@@ -0,0 +1,107 @@
+package com.uvg.wellnessapp.security;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable lookup tables for {@link TokenRevocationList}, rebuilt on every change and
+ * swapped in with one volatile write, so readers never lock.
+ * <p>
+ * Both tables use open addressing with linear probing over primitive arrays, kept at most
+ * half full: user id &rarr; revocation watermark (epoch seconds) and the set of revoked jti
+ * values as (most, least) significant long pairs. No boxing on lookup, and a few bytes per entry.
+ */
+final class RevocationSnapshot {
+
+    static final RevocationSnapshot EMPTY = new RevocationSnapshot(Map.of(), Map.of());
+
+    // 0 marks an empty slot: user ids start at 1 and a random UUID is never all zero
+    private final long[] userKeys;
+    private final long[] watermarks;
+    private final long[] jtiHigh;
+    private final long[] jtiLow;
+    private final int userMask;
+    private final int jtiMask;
+    private final int userCount;
+    private final int jtiCount;
+
+    RevocationSnapshot(Map<Long, Long> userWatermarks, Map<UUID, ?> jtis) {
+        int userCapacity = tableSize(userWatermarks.size());
+        this.userKeys = new long[userCapacity];
+        this.watermarks = new long[userCapacity];
+        this.userMask = userCapacity - 1;
+        this.userCount = userWatermarks.size();
+        for (Map.Entry<Long, Long> e : userWatermarks.entrySet()) {
+            int slot = mix(e.getKey()) & userMask;
+            while (userKeys[slot] != 0) {
+                slot = (slot + 1) & userMask;
+            }
+            userKeys[slot] = e.getKey();
+            watermarks[slot] = e.getValue();
+        }
+
+        int jtiCapacity = tableSize(jtis.size());
+        this.jtiHigh = new long[jtiCapacity];
+        this.jtiLow = new long[jtiCapacity];
+        this.jtiMask = jtiCapacity - 1;
+        this.jtiCount = jtis.size();
+        for (UUID jti : jtis.keySet()) {
+            long hi = jti.getMostSignificantBits();
+            long lo = jti.getLeastSignificantBits();
+            int slot = mix(hi ^ lo) & jtiMask;
+            while (jtiHigh[slot] != 0 || jtiLow[slot] != 0) {
+                slot = (slot + 1) & jtiMask;
+            }
+            jtiHigh[slot] = hi;
+            jtiLow[slot] = lo;
+        }
+    }
+
+    /** Epoch second before which the user's tokens are revoked, or {@link Long#MIN_VALUE}. */
+    long watermark(long userId) {
+        int slot = mix(userId) & userMask;
+        for (;;) {
+            long key = userKeys[slot];
+            if (key == userId) {
+                return watermarks[slot];
+            }
+            if (key == 0) {
+                return Long.MIN_VALUE;
+            }
+            slot = (slot + 1) & userMask;
+        }
+    }
+
+    boolean containsJti(long hi, long lo) {
+        int slot = mix(hi ^ lo) & jtiMask;
+        for (;;) {
+            long h = jtiHigh[slot];
+            long l = jtiLow[slot];
+            if (h == hi && l == lo) {
+                return true;
+            }
+            if (h == 0 && l == 0) {
+                return false;
+            }
+            slot = (slot + 1) & jtiMask;
+        }
+    }
+
+    int users() {
+        return userCount;
+    }
+
+    int jtis() {
+        return jtiCount;
+    }
+
+    // Power of two with at least one free slot per entry
+    private static int tableSize(int entries) {
+        return Integer.highestOneBit(Math.max(8, entries * 2 - 1)) << 1;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,152 @@
+package com.uvg.wellnessapp.security;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token buckets for one {@link RateLimitPolicy}.
+ * Each bucket is a single {@link AtomicLong}: the high 24 bits hold the balance in
+ * milli-tokens and the low 40 bits the time of the last refill (ms since this limiter
+ * was created), so a request is one read plus one CAS with no allocation.
+ * At most {@code maxKeys} buckets are tracked. A new key on a full limiter first drops the
+ * buckets that have refilled (at most once a second); if none have, it takes the place of an
+ * arbitrary bucket. Callers never share a bucket, so a flood of new keys cannot starve the
+ * clients already being tracked.
+ */
+final class TokenBucketLimiter {
+
+    static final int MAX_CAPACITY = (1 << 24) / 1000 - 1;
+
+    private static final int TIME_BITS = 40;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final long ONE_TOKEN = 1000;
+    private static final long EVICT_INTERVAL_MS = 1000;
+
+    private final RateLimitPolicy policy;
+    private final long capacityMilli;
+    private final int maxKeys;
+    private final long epoch = System.currentTimeMillis();
+
+    private final ConcurrentHashMap<Object, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger tracked = new AtomicInteger();
+    private final AtomicLong nextEvictAt = new AtomicLong();
+
+    TokenBucketLimiter(RateLimitPolicy policy, int maxKeys) {
+        this.policy = policy;
+        this.capacityMilli = policy.capacity() * ONE_TOKEN;
+        this.maxKeys = Math.max(1, maxKeys);
+    }
+
+    RateLimitPolicy policy() {
+        return policy;
+    }
+
+    int trackedKeys() {
+        return tracked.get();
+    }
+
+    /**
+     * Takes one token for {@code key}.
+     *
+     * @return the whole tokens left (&ge; 0) when allowed, or minus the milliseconds
+     *         until a token is available when refused
+     */
+    long tryAcquire(Object key) {
+        AtomicLong bucket = bucketFor(key);
+        long now = now();
+        for (;;) {
+            long state = bucket.get();
+            long balance = refilledBalance(state, now);
+            if (balance < ONE_TOKEN) {
+                long missing = ONE_TOKEN - balance;
+                // milli-tokens / (perMinute * 1000 / 60000 milli-tokens per ms), rounded up
+                return -Math.max(1, (missing * 60 + policy.perMinute() - 1) / policy.perMinute());
+            }
+            long next = pack(balance - ONE_TOKEN, refillTime(state, now, balance));
+            if (bucket.compareAndSet(state, next)) {
+                return (balance - ONE_TOKEN) / ONE_TOKEN;
+            }
+        }
+    }
+
+    /** Drops buckets that have refilled completely; they hold nothing a new bucket would not. */
+    int evictFull() {
+        long now = now();
+        int removed = 0;
+        for (var it = buckets.values().iterator(); it.hasNext(); ) {
+            AtomicLong bucket = it.next();
+            if (refilledBalance(bucket.get(), now) >= capacityMilli) {
+                it.remove();
+                tracked.decrementAndGet();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private AtomicLong bucketFor(Object key) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (tracked.get() >= maxKeys) {
+            makeRoom();
+        }
+        return buckets.computeIfAbsent(key, k -> {
+            tracked.incrementAndGet();
+            return new AtomicLong(fullState(now()));
+        });
+    }
+
+    private void makeRoom() {
+        long now = now();
+        long due = nextEvictAt.get();
+        if (now >= due && nextEvictAt.compareAndSet(due, now + EVICT_INTERVAL_MS)) {
+            evictFull();
+        }
+        // Every bucket is still in use: an arbitrary one starts over, full, on its next request
+        var it = buckets.keySet().iterator();
+        while (tracked.get() >= maxKeys && it.hasNext()) {
+            if (buckets.remove(it.next()) != null) {
+                tracked.decrementAndGet();
+            }
+        }
+    }
+
+    private long refilledBalance(long state, long now) {
+        long balance = state >>> TIME_BITS;
+        long elapsed = now - (state & TIME_MASK);
+        if (elapsed <= 0) {
+            return balance;
+        }
+        // perMinute tokens per 60000 ms == perMinute / 60 milli-tokens per ms
+        return Math.min(capacityMilli, balance + elapsed * policy.perMinute() / 60);
+    }
+
+    // Advances the refill clock only by the time that was converted into tokens, so frequent
+    // requests do not lose the fractional refill between them
+    private long refillTime(long state, long now, long balance) {
+        long last = state & TIME_MASK;
+        if (now <= last) {
+            return last;
+        }
+        if (balance >= capacityMilli) {
+            return now;
+        }
+        long added = balance - (state >>> TIME_BITS);
+        return last + added * 60 / policy.perMinute();
+    }
+
+    private long fullState(long now) {
+        return pack(capacityMilli, now);
+    }
+
+    private static long pack(long balanceMilli, long time) {
+        return (balanceMilli << TIME_BITS) | (time & TIME_MASK);
+    }
+
+    private long now() {
+        return System.currentTimeMillis() - epoch;
+    }
+}
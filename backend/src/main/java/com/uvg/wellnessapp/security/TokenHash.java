@@ -0,0 +1,24 @@
+package com.uvg.wellnessapp.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 of bearer tokens, used wherever a token is stored or cached so the raw value never is.
+ */
+public final class TokenHash {
+
+  private TokenHash() {
+  }
+
+  public static String sha256Hex(String token) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
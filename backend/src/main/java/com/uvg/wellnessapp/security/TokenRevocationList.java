@@ -0,0 +1,188 @@
+package com.uvg.wellnessapp.security;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Revoked access tokens, checked by {@link JwtAuthFilter} on every request without I/O.
+ * <p>
+ * Revocations are written to {@code token_revocations} and mirrored in a
+ * {@link RevocationSnapshot}: a per-user "issued before" watermark (password change or reset,
+ * account deletion) and a set of revoked jti values (logout). Each node applies its own
+ * revocations as soon as they commit and picks up the others' on a short poll, so a revoked
+ * token stops working cluster-wide within {@code sync-ms}. Entries are dropped once the tokens
+ * they cover have expired, which keeps the tables as small as the access-token lifetime allows.
+ */
+@Component
+public class TokenRevocationList {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    private static final String INSERT_SQL = """
+            INSERT INTO token_revocations (user_id, jti, not_before, expires_at)
+            VALUES (:userId, :jti, :notBefore, :expiresAt)""";
+
+    private static final String SYNC_SQL = """
+            SELECT user_id, jti, not_before, expires_at FROM token_revocations
+            WHERE created_at > :since AND expires_at > now()""";
+
+    // Re-read rows this far back on each poll so transactions that committed late are not missed
+    private static final long SYNC_OVERLAP_SECONDS = 60;
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final long tokenLifetimeSeconds;
+
+    private volatile RevocationSnapshot snapshot = RevocationSnapshot.EMPTY;
+
+    // Source of the snapshot; guarded by this
+    private final Map<Long, Watermark> watermarks = new HashMap<>();
+    private final Map<UUID, Instant> jtis = new HashMap<>();
+    private Instant syncedUntil = Instant.EPOCH;
+
+    private record Watermark(long notBefore, Instant expiresAt) {}
+
+    public TokenRevocationList(NamedParameterJdbcTemplate jdbc,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.security.jwt.expMinutes}") int expMinutes) {
+        this.jdbc = jdbc;
+        // A watermark outlives every token it covers by the clock skew we tolerate
+        this.tokenLifetimeSeconds = expMinutes * 60L + 60;
+        Gauge.builder("auth.revocation.users", this, r -> r.snapshot.users()).register(meterRegistry);
+        Gauge.builder("auth.revocation.jtis", this, r -> r.snapshot.jtis()).register(meterRegistry);
+    }
+
+    /** True if the token was revoked by a watermark or by its jti. */
+    public boolean isRevoked(VerifiedToken token) {
+        RevocationSnapshot current = snapshot;
+        if (token.issuedAt() != null && token.issuedAt().getEpochSecond() < current.watermark(token.userId())) {
+            return true;
+        }
+        if (token.jti() == null || current.jtis() == 0) {
+            return false;
+        }
+        try {
+            UUID jti = UUID.fromString(token.jti());
+            return current.containsJti(jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Revokes every access token of the user issued before now.
+     * JWT issue times have one-second resolution, so tokens issued earlier in the current second
+     * stay valid; that also keeps a token issued right after the change usable.
+     */
+    public void revokeAllForUser(Long userId) {
+        Instant now = Instant.now();
+        long notBefore = now.truncatedTo(ChronoUnit.SECONDS).getEpochSecond();
+        Instant expiresAt = now.plusSeconds(tokenLifetimeSeconds);
+        jdbc.update(INSERT_SQL, new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("jti", null)
+                .addValue("notBefore", Timestamp.from(Instant.ofEpochSecond(notBefore)))
+                .addValue("expiresAt", Timestamp.from(expiresAt)));
+        afterCommit(() -> {
+            synchronized (this) {
+                mergeWatermark(userId, notBefore, expiresAt);
+                publish();
+            }
+        });
+    }
+
+    /** Revokes a single access token, e.g. on logout. Tokens without a jti just run out. */
+    public void revoke(VerifiedToken token) {
+        if (token.jti() == null) {
+            return;
+        }
+        UUID jti;
+        try {
+            jti = UUID.fromString(token.jti());
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        jdbc.update(INSERT_SQL, new MapSqlParameterSource()
+                .addValue("userId", token.userId())
+                .addValue("jti", jti)
+                .addValue("notBefore", null)
+                .addValue("expiresAt", Timestamp.from(token.expiresAt())));
+        afterCommit(() -> {
+            synchronized (this) {
+                jtis.put(jti, token.expiresAt());
+                publish();
+            }
+        });
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.security.revocation.sync-ms:5000}")
+    public synchronized void sync() {
+        int[] rows = {0};
+        try {
+            Instant dbNow = jdbc.getJdbcTemplate().queryForObject("SELECT now()", Timestamp.class).toInstant();
+            jdbc.query(SYNC_SQL, new MapSqlParameterSource("since", Timestamp.from(syncedUntil)), rs -> {
+                long userId = rs.getLong("user_id");
+                UUID jti = rs.getObject("jti", UUID.class);
+                Instant expiresAt = rs.getTimestamp("expires_at").toInstant();
+                rows[0]++;
+                if (jti != null) {
+                    jtis.put(jti, expiresAt);
+                } else {
+                    mergeWatermark(userId, rs.getTimestamp("not_before").toInstant().getEpochSecond(), expiresAt);
+                }
+            });
+            syncedUntil = dbNow.minusSeconds(SYNC_OVERLAP_SECONDS);
+        } catch (DataAccessException e) {
+            log.warn("Token revocation sync failed, keeping the last snapshot: {}", e.getMessage());
+        }
+
+        Instant now = Instant.now();
+        boolean expired = watermarks.values().removeIf(w -> now.isAfter(w.expiresAt()));
+        expired |= jtis.values().removeIf(now::isAfter);
+        if (rows[0] > 0 || expired) {
+            publish();
+        }
+    }
+
+    private void mergeWatermark(long userId, long notBefore, Instant expiresAt) {
+        watermarks.merge(userId, new Watermark(notBefore, expiresAt), (a, b) -> new Watermark(
+                Math.max(a.notBefore(), b.notBefore()),
+                a.expiresAt().isAfter(b.expiresAt()) ? a.expiresAt() : b.expiresAt()));
+    }
+
+    // Copy-on-write: readers keep using the old snapshot until the new one is published
+    private void publish() {
+        Map<Long, Long> byUser = new HashMap<>(watermarks.size() * 2);
+        watermarks.forEach((userId, w) -> byUser.put(userId, w.notBefore()));
+        snapshot = new RevocationSnapshot(byUser, jtis);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
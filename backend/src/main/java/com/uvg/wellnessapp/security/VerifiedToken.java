@@ -0,0 +1,14 @@
+package com.uvg.wellnessapp.security;
+
+import java.time.Instant;
+
+/**
+ * Claims of a JWT whose signature and expiry were checked by {@link JwtService#verify}.
+ * {@code jti} and {@code issuedAt} are used for revocation and may be null on old tokens.
+ */
+public record VerifiedToken(Long userId, String email, String role, String jti, Instant issuedAt, Instant expiresAt) {
+
+  public boolean isExpired(Instant now) {
+    return !now.isBefore(expiresAt);
+  }
+}
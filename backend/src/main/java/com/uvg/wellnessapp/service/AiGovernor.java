@@ -0,0 +1,194 @@
+package com.uvg.wellnessapp.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Admission control in front of every model call.
+ * <ul>
+ *   <li>a token bucket per user (burst + hourly refill) for interactive calls,</li>
+ *   <li>a global cap on calls in flight; callers over it wait in a bounded queue,</li>
+ *   <li>a daily token budget fed from the usage fields of each reply.</li>
+ * </ul>
+ * Refused calls throw {@link AiThrottledException} so callers can degrade
+ * (stored or local insight) instead of failing.
+ */
+@Component
+public class AiGovernor {
+
+    private static final Logger log = LoggerFactory.getLogger(AiGovernor.class);
+
+    private final int userBurst;
+    private final double userRefillPerMs;
+    private final long queueTimeoutMs;
+    private final int maxQueued;
+    private final long dailyTokenBudget;
+
+    private final Semaphore inFlight;
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ConcurrentHashMap<Long, UserBucket> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong tokensToday = new AtomicLong();
+    private volatile LocalDate budgetDay = LocalDate.now();
+
+    private final MeterRegistry meterRegistry;
+
+    public AiGovernor(MeterRegistry meterRegistry,
+                      @Value("${app.ai.governor.user-burst:5}") int userBurst,
+                      @Value("${app.ai.governor.user-per-hour:20}") int userPerHour,
+                      @Value("${app.ai.governor.max-in-flight:8}") int maxInFlight,
+                      @Value("${app.ai.governor.max-queued:32}") int maxQueued,
+                      @Value("${app.ai.governor.queue-timeout-ms:5000}") long queueTimeoutMs,
+                      @Value("${app.ai.governor.daily-token-budget:2000000}") long dailyTokenBudget) {
+        this.meterRegistry = meterRegistry;
+        this.userBurst = Math.max(1, userBurst);
+        this.userRefillPerMs = Math.max(1, userPerHour) / 3_600_000.0;
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+        this.maxQueued = Math.max(0, maxQueued);
+        this.queueTimeoutMs = queueTimeoutMs;
+        this.dailyTokenBudget = dailyTokenBudget;
+
+        Gauge.builder("ai.governor.in_flight", inFlightCount, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("ai.governor.queued", queued, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("ai.governor.tokens_today", this, AiGovernor::tokensUsedToday).register(meterRegistry);
+        Gauge.builder("ai.governor.tracked_users", buckets, ConcurrentHashMap::size).register(meterRegistry);
+    }
+
+    /**
+     * Runs a model call under the governor.
+     *
+     * @param userId the user the call is made for, or {@code null} for background work
+     *               (pre-generation), which skips the per-user bucket but shares the budget and the cap
+     */
+    public AnthropicClient.Reply execute(Long userId, Supplier<AnthropicClient.Reply> call) {
+        if (tokensUsedToday() >= dailyTokenBudget) {
+            throw reject(AiThrottledException.Reason.DAILY_BUDGET, "Daily AI token budget spent");
+        }
+
+        UserBucket bucket = null;
+        if (userId != null) {
+            bucket = buckets.computeIfAbsent(userId, id -> new UserBucket(userBurst));
+            if (!bucket.tryTake(userBurst, userRefillPerMs)) {
+                throw reject(AiThrottledException.Reason.USER_RATE, "AI rate limit reached for user " + userId);
+            }
+        }
+
+        if (!acquireSlot()) {
+            if (bucket != null) bucket.refund(userBurst);
+            throw reject(AiThrottledException.Reason.BUSY, "Too many AI calls in progress");
+        }
+
+        inFlightCount.incrementAndGet();
+        try {
+            AnthropicClient.Reply reply = call.get();
+            recordUsage(reply);
+            return reply;
+        } finally {
+            inFlightCount.decrementAndGet();
+            inFlight.release();
+        }
+    }
+
+    public long tokensUsedToday() {
+        rollBudgetDay();
+        return tokensToday.get();
+    }
+
+    public long getDailyTokenBudget() {
+        return dailyTokenBudget;
+    }
+
+    private boolean acquireSlot() {
+        if (inFlight.tryAcquire()) {
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            return false;
+        }
+        try {
+            return inFlight.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    private void recordUsage(AnthropicClient.Reply reply) {
+        rollBudgetDay();
+        tokensToday.addAndGet(reply.totalTokens());
+        meterRegistry.counter("ai.governor.tokens", "type", "input").increment(reply.inputTokens());
+        meterRegistry.counter("ai.governor.tokens", "type", "output").increment(reply.outputTokens());
+    }
+
+    private void rollBudgetDay() {
+        LocalDate today = LocalDate.now();
+        if (!today.equals(budgetDay)) {
+            synchronized (this) {
+                if (!today.equals(budgetDay)) {
+                    log.info("AI daily token usage for {}: {} of {}", budgetDay, tokensToday.get(), dailyTokenBudget);
+                    tokensToday.set(0);
+                    budgetDay = today;
+                }
+            }
+        }
+    }
+
+    private AiThrottledException reject(AiThrottledException.Reason reason, String message) {
+        meterRegistry.counter("ai.governor.rejections", "reason", reason.name().toLowerCase()).increment();
+        return new AiThrottledException(reason, message);
+    }
+
+    // Full buckets carry no state worth keeping
+    @Scheduled(fixedDelay = 600_000)
+    public void evictIdleBuckets() {
+        buckets.values().removeIf(b -> b.isFull(userBurst, userRefillPerMs));
+    }
+
+    private static final class UserBucket {
+        private double tokens;
+        private long lastRefill = System.currentTimeMillis();
+
+        UserBucket(int capacity) {
+            this.tokens = capacity;
+        }
+
+        synchronized boolean tryTake(int capacity, double refillPerMs) {
+            refill(capacity, refillPerMs);
+            if (tokens < 1) return false;
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized void refund(int capacity) {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        synchronized boolean isFull(int capacity, double refillPerMs) {
+            refill(capacity, refillPerMs);
+            return tokens >= capacity;
+        }
+
+        private void refill(int capacity, double refillPerMs) {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerMs);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.uvg.wellnessapp.service;
+
+import com.uvg.wellnessapp.repository.MoodEntryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off-peak pre-generation of dashboard insights.
+ * Picks users with recent mood entries and regenerates the insight of those whose data
+ * fingerprint changed, so the morning traffic is served from {@code ai_insights}.
+ * Each user runs on a virtual thread; a semaphore caps the calls in flight and the run
+ * stops submitting work once the token budget is spent.
+ */
+@Service
+public class AiInsightPrecomputeJob {
+
+    private static final Logger log = LoggerFactory.getLogger(AiInsightPrecomputeJob.class);
+
+    private final AiInsightService aiService;
+    private final MoodEntryRepository moodRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.ai.batch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.batch.active-days:7}")
+    private int activeDays;
+
+    @Value("${app.ai.batch.max-concurrency:4}")
+    private int maxConcurrency;
+
+    @Value("${app.ai.batch.token-budget:500000}")
+    private long tokenBudget;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile Progress current;
+    private volatile RunReport lastReport;
+
+    public AiInsightPrecomputeJob(AiInsightService aiService,
+                                  MoodEntryRepository moodRepository,
+                                  MeterRegistry meterRegistry) {
+        this.aiService = aiService;
+        this.moodRepository = moodRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public record RunReport(Instant startedAt, Instant finishedAt, int candidates, int processed,
+                            int generated, int unchanged, int noData, int failed, int skippedByBudget,
+                            long tokensUsed, double usersPerSecond) {}
+
+    public record Status(boolean running, RunReport current, RunReport last) {}
+
+    @Scheduled(cron = "${app.ai.batch.cron:0 0 3 * * *}")
+    public void scheduledRun() {
+        if (!enabled || !aiService.isAvailable()) {
+            return;
+        }
+        run();
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public Status getStatus() {
+        Progress p = current;
+        return new Status(running.get(), p != null && running.get() ? p.snapshot(null) : null, lastReport);
+    }
+
+    /**
+     * Runs one pre-generation pass and blocks until it finishes.
+     * Returns empty if another pass is already running.
+     */
+    public Optional<RunReport> run() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("AI insight pre-generation already running, skipping");
+            return Optional.empty();
+        }
+        try {
+            RunReport report = runPass();
+            lastReport = report;
+            log.info("AI insight pre-generation finished: {} candidates, {} generated, {} unchanged, {} without data, " +
+                            "{} failed, {} skipped by budget, {} tokens, {} users/s",
+                    report.candidates(), report.generated(), report.unchanged(), report.noData(),
+                    report.failed(), report.skippedByBudget(), report.tokensUsed(),
+                    String.format("%.2f", report.usersPerSecond()));
+            return Optional.of(report);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private RunReport runPass() {
+        List<Long> userIds = moodRepository.findActiveUserIds(LocalDateTime.now().minusDays(activeDays));
+        Progress progress = new Progress(userIds.size());
+        current = progress;
+        log.info("AI insight pre-generation started: {} active users in the last {} days", userIds.size(), activeDays);
+
+        int logEvery = Math.max(1, userIds.size() / 10);
+        Semaphore permits = new Semaphore(Math.max(1, maxConcurrency));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < userIds.size(); i++) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("AI insight pre-generation interrupted");
+                    break;
+                }
+
+                // Calls already in flight may overshoot the budget by at most maxConcurrency responses
+                if (progress.tokensUsed.get() >= tokenBudget || progress.dailyBudgetSpent) {
+                    permits.release();
+                    progress.skippedByBudget.addAndGet(userIds.size() - i);
+                    log.warn("AI insight {} token budget reached, skipping {} remaining users",
+                            progress.dailyBudgetSpent ? "daily" : "pass", userIds.size() - i);
+                    break;
+                }
+
+                Long userId = userIds.get(i);
+                executor.submit(() -> {
+                    try {
+                        process(userId, progress, logEvery);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+
+        return progress.snapshot(Instant.now());
+    }
+
+    private void process(Long userId, Progress progress, int logEvery) {
+        String outcome;
+        try {
+            AiInsightService.PrecomputeResult result = aiService.precomputeDashboardInsight(userId);
+            progress.tokensUsed.addAndGet(result.tokensUsed());
+            meterRegistry.counter("ai.batch.tokens").increment(result.tokensUsed());
+            switch (result.outcome()) {
+                case GENERATED -> progress.generated.incrementAndGet();
+                case UNCHANGED -> progress.unchanged.incrementAndGet();
+                case NO_DATA -> progress.noData.incrementAndGet();
+            }
+            outcome = result.outcome().name().toLowerCase();
+        } catch (AiThrottledException e) {
+            if (e.getReason() == AiThrottledException.Reason.DAILY_BUDGET) {
+                progress.dailyBudgetSpent = true;
+            }
+            progress.failed.incrementAndGet();
+            outcome = "throttled";
+            log.debug("AI insight pre-generation throttled for user {}: {}", userId, e.getReason());
+        } catch (Exception e) {
+            progress.failed.incrementAndGet();
+            outcome = "failed";
+            log.warn("AI insight pre-generation failed for user {}: {}", userId, e.getMessage());
+        }
+        meterRegistry.counter("ai.batch.users", "outcome", outcome).increment();
+
+        int done = progress.processed.incrementAndGet();
+        if (done % logEvery == 0) {
+            log.info("AI insight pre-generation progress: {}/{} users, {} failed, {} tokens",
+                    done, progress.candidates, progress.failed.get(), progress.tokensUsed.get());
+        }
+    }
+
+    private static final class Progress {
+        final Instant startedAt = Instant.now();
+        final int candidates;
+        final AtomicInteger processed = new AtomicInteger();
+        final AtomicInteger generated = new AtomicInteger();
+        final AtomicInteger unchanged = new AtomicInteger();
+        final AtomicInteger noData = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger skippedByBudget = new AtomicInteger();
+        final AtomicLong tokensUsed = new AtomicLong();
+        volatile boolean dailyBudgetSpent;
+
+        Progress(int candidates) {
+            this.candidates = candidates;
+        }
+
+        RunReport snapshot(Instant finishedAt) {
+            Instant end = finishedAt != null ? finishedAt : Instant.now();
+            long millis = Math.max(1, Duration.between(startedAt, end).toMillis());
+            int done = processed.get();
+            return new RunReport(startedAt, finishedAt, candidates, done, generated.get(), unchanged.get(),
+                    noData.get(), failed.get(), skippedByBudget.get(), tokensUsed.get(), done * 1000.0 / millis);
+        }
+    }
+}
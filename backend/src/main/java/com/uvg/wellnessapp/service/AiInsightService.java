@@ -1,29 +1,35 @@
 package com.uvg.wellnessapp.service;
 
+import com.uvg.wellnessapp.domain.AiInsight;
 import com.uvg.wellnessapp.domain.AssessmentResult;
 import com.uvg.wellnessapp.domain.MoodEntry;
+import com.uvg.wellnessapp.repository.AiInsightRepository;
 import com.uvg.wellnessapp.repository.AssessmentResultRepository;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 @Service
 public class AiInsightService {
 
     private static final Logger log = LoggerFactory.getLogger(AiInsightService.class);
-    private static final String CLAUDE_API_URL = "https://api.anthropic.com/v1/messages";
     private static final String MODEL = "claude-haiku-4-5-20251001";
     private static final long CACHE_TTL_MS = 24 * 60 * 60 * 1000L;
     private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final String NO_DATA_JSON = "{\"disponible\":true,\"sinDatos\":true,\"mensaje\":\"Registra al menos algunos días de ánimo para obtener perspectivas personalizadas.\"}";
 
     private static final String SYSTEM_PROMPT = """
             Eres un asistente de bienestar emocional. NO eres un profesional de salud mental.
@@ -35,62 +41,182 @@ public class AiInsightService {
 
     private static final String DISCLAIMER = "Este análisis es orientativo y no constituye consejo médico. Consulta siempre con un profesional de salud mental.";
 
-    @Value("${anthropic.api-key:}")
-    private String apiKey;
-
-    private final RestTemplate restTemplate;
+    private static final String DASHBOARD_INSTRUCTIONS = """
+            CONTEXTO DE ESCALAS:
+            - GAD-7 (ansiedad): 0-4 mínima, 5-9 leve, 10-14 moderada, 15-21 severa
+            - PHQ-9 (depresión): 0-4 mínima, 5-9 leve, 10-14 moderada, 15-19 moderadamente severa, 20-27 severa
+
+            Responde SOLO con un objeto JSON con esta estructura exacta (sin backticks ni markdown):
+            {
+              "patrones": "Descripción de patrones detectados en 2-3 oraciones",
+              "correlacionSueno": "Análisis de la relación sueño-ánimo en 1-2 oraciones",
+              "analisisTags": "Análisis de actividades y su impacto en 1-2 oraciones",
+              "recomendaciones": ["recomendación 1 concreta", "recomendación 2 concreta", "recomendación 3 concreta"],
+              "riesgo": {"nivel": "bajo|medio|alto", "mensaje": "Mensaje empático sobre el estado general"},
+              "disclaimer": "%s"
+            }""".formatted(DISCLAIMER);
+
+    // Aggregated data plus instructions fit in one allocation
+    private static final int DASHBOARD_PROMPT_CAPACITY = 1024 + DASHBOARD_INSTRUCTIONS.length();
+
+    private final AnthropicClient client;
+    private final AiGovernor governor;
     private final AssessmentResultRepository assessmentRepo;
+    private final AiInsightRepository insightRepo;
     private final MoodService moodService;
+    private final LocalInsightEngine localEngine;
     private final ObjectMapper objectMapper;
 
     private final ConcurrentHashMap<Long, CachedInsight> cache = new ConcurrentHashMap<>();
 
     record CachedInsight(String json, long createdAt) {}
 
-    public AiInsightService(RestTemplate restTemplate,
+    /** Inputs of a dashboard insight, loaded once and shared by the prompt and the fingerprint. */
+    record DashboardData(List<MoodEntry> moods, List<AssessmentResult> assessments, InsightFeatures features) {}
+
+    public enum PrecomputeOutcome { GENERATED, UNCHANGED, NO_DATA }
+
+    public record PrecomputeResult(PrecomputeOutcome outcome, int tokensUsed) {}
+
+    public AiInsightService(AnthropicClient client,
+                            AiGovernor governor,
                             AssessmentResultRepository assessmentRepo,
-                            MoodService moodService) {
-        this.restTemplate = restTemplate;
+                            AiInsightRepository insightRepo,
+                            MoodService moodService,
+                            LocalInsightEngine localEngine) {
+        this.client = client;
+        this.governor = governor;
         this.assessmentRepo = assessmentRepo;
+        this.insightRepo = insightRepo;
         this.moodService = moodService;
+        this.localEngine = localEngine;
         this.objectMapper = new ObjectMapper();
     }
 
     public boolean isAvailable() {
-        return apiKey != null && !apiKey.isBlank();
+        return client.isConfigured();
     }
 
     public String getDashboardInsights(Long userId, boolean forceRefresh) {
-        if (!isAvailable()) {
-            return "{\"disponible\":false,\"mensaje\":\"IA no configurada.\"}";
-        }
+        return dashboardInsights(userId, forceRefresh, null, null);
+    }
+
+    /**
+     * Streaming variant of {@link #getDashboardInsights}: when the model has to be called,
+     * a local insight is handed to {@code onPreview} first and then every text delta to
+     * {@code onDelta} as it arrives. The returned value is the final, validated JSON (or a
+     * cached/local response, in which case nothing is sent to the callbacks).
+     */
+    public String streamDashboardInsights(Long userId, boolean forceRefresh,
+                                          Consumer<String> onPreview, Consumer<String> onDelta) {
+        return dashboardInsights(userId, forceRefresh, Objects.requireNonNull(onPreview), Objects.requireNonNull(onDelta));
+    }
 
-        if (!forceRefresh) {
+    private String dashboardInsights(Long userId, boolean forceRefresh,
+                                     Consumer<String> onPreview, Consumer<String> onDelta) {
+        if (!forceRefresh && isAvailable()) {
             CachedInsight cached = cache.get(userId);
             if (cached != null && (System.currentTimeMillis() - cached.createdAt) < CACHE_TTL_MS) {
                 return cached.json;
             }
         }
 
-        List<MoodEntry> moods = moodService.getRecentMoods(userId, 30);
-        List<AssessmentResult> assessments = assessmentRepo.findByUserIdOrderByCreatedAtDesc(userId);
-        MoodService.MoodStats stats = moodService.getStats(userId, 30);
+        DashboardData data = loadDashboardData(userId);
+        if (data.moods().isEmpty()) {
+            return NO_DATA_JSON;
+        }
 
-        if (moods.isEmpty()) {
-            return "{\"disponible\":true,\"sinDatos\":true,\"mensaje\":\"Registra al menos algunos días de ánimo para obtener perspectivas personalizadas.\"}";
+        if (!isAvailable()) {
+            return localEngine.generate(data.features());
         }
 
-        String prompt = buildDashboardPrompt(moods, assessments, stats);
+        String fingerprint = fingerprint(data);
+
+        // Serve the stored (possibly pre-generated) insight while it is fresh or the data has not changed
+        AiInsight stored = insightRepo.findById(userId).orElse(null);
+        if (!forceRefresh && stored != null
+                && (stored.getFingerprint().equals(fingerprint) || isFresh(stored.getGeneratedAt()))) {
+            cache.put(userId, new CachedInsight(stored.getInsightJson(), System.currentTimeMillis()));
+            return stored.getInsightJson();
+        }
+
+        if (onPreview != null) {
+            onPreview.accept(localEngine.generate(data.features()));
+        }
 
         try {
-            String response = callClaude(prompt);
-            cache.put(userId, new CachedInsight(response, System.currentTimeMillis()));
-            return response;
+            return generateDashboardInsight(userId, data, fingerprint, userId, onDelta).text();
+        } catch (AiThrottledException e) {
+            log.debug("Dashboard insight of user {} throttled: {}", userId, e.getReason());
+        } catch (AiUnavailableException e) {
+            log.warn("Model API unavailable for dashboard insights of user {}: {}", userId, e.getMessage());
         } catch (Exception e) {
             log.error("Error calling Claude API for dashboard insights", e);
-            String detail = e.getMessage() != null ? e.getMessage().replace("\"", "'").replace("\n", " ") : "unknown";
-            if (detail.length() > 200) detail = detail.substring(0, 200);
-            return "{\"disponible\":true,\"error\":true,\"mensaje\":\"Error: " + detail + "\"}";
+        }
+        // A stale insight is better than a rule-based one, and both are better than an error
+        return stored != null ? stored.getInsightJson() : localEngine.generate(data.features());
+    }
+
+    /**
+     * Generates and stores the dashboard insight of a user ahead of time, skipping the
+     * model call when the stored insight was built from the same data.
+     * Errors are propagated so the caller can count them.
+     */
+    public PrecomputeResult precomputeDashboardInsight(Long userId) {
+        if (!isAvailable()) {
+            throw new IllegalStateException("AI is not configured");
+        }
+
+        DashboardData data = loadDashboardData(userId);
+        if (data.moods().isEmpty()) {
+            return new PrecomputeResult(PrecomputeOutcome.NO_DATA, 0);
+        }
+
+        String fingerprint = fingerprint(data);
+        AiInsight stored = insightRepo.findById(userId).orElse(null);
+        if (stored != null && stored.getFingerprint().equals(fingerprint)) {
+            return new PrecomputeResult(PrecomputeOutcome.UNCHANGED, 0);
+        }
+
+        // Background work: no per-user quota, but it shares the global cap and daily budget
+        AnthropicClient.Reply reply = generateDashboardInsight(userId, data, fingerprint, null, null);
+        return new PrecomputeResult(PrecomputeOutcome.GENERATED, reply.totalTokens());
+    }
+
+    private DashboardData loadDashboardData(Long userId) {
+        List<MoodEntry> moods = moodService.getRecentMoods(userId, 30);
+        List<AssessmentResult> assessments = assessmentRepo.findByUserIdOrderByCreatedAtDesc(userId);
+        MoodService.MoodStats stats = moodService.getStats(userId, 30);
+        return new DashboardData(moods, assessments, InsightFeatures.extract(moods, assessments, stats, LocalDate.now()));
+    }
+
+    private AnthropicClient.Reply generateDashboardInsight(Long userId, DashboardData data, String fingerprint,
+                                                           Long quotaUserId, Consumer<String> onDelta) {
+        String prompt = buildDashboardPrompt(data.features());
+        AnthropicClient.Reply reply = onDelta == null
+                ? callClaude(quotaUserId, prompt)
+                : streamClaude(quotaUserId, prompt, onDelta);
+
+        cache.put(userId, new CachedInsight(reply.text(), System.currentTimeMillis()));
+        insightRepo.save(new AiInsight(userId, fingerprint, reply.text(), reply.inputTokens(), reply.outputTokens()));
+        return reply;
+    }
+
+    private boolean isFresh(LocalDateTime generatedAt) {
+        return Duration.between(generatedAt, LocalDateTime.now()).toMillis() < CACHE_TTL_MS;
+    }
+
+    /**
+     * SHA-256 of the features the dashboard prompt is built from. They are relative to the
+     * analysis date (week buckets, streak, trend), so a new day only changes the fingerprint
+     * when it changes what the model would be told. Records and lists print every component.
+     */
+    private String fingerprint(DashboardData data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(data.features().toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
 
@@ -107,7 +233,10 @@ public class AiInsightService {
         String prompt = buildAssessmentPrompt(assessmentType, total, category, answers, history);
 
         try {
-            return callClaude(prompt);
+            return callClaude(userId, prompt).text();
+        } catch (AiThrottledException e) {
+            log.debug("Assessment analysis of user {} throttled: {}", userId, e.getReason());
+            return "{\"disponible\":true,\"limitado\":true,\"mensaje\":\"Has alcanzado el límite de análisis con IA por ahora. Intenta de nuevo más tarde.\"}";
         } catch (Exception e) {
             log.error("Error calling Claude API for assessment analysis", e);
             String detail = e.getMessage() != null ? e.getMessage().replace("\"", "'").replace("\n", " ") : "unknown";
@@ -116,59 +245,89 @@ public class AiInsightService {
         }
     }
 
-    private String buildDashboardPrompt(List<MoodEntry> moods, List<AssessmentResult> assessments, MoodService.MoodStats stats) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Analiza los siguientes datos de bienestar de un usuario y proporciona perspectivas personalizadas.\n\n");
-
-        sb.append("DATOS DE ÁNIMO (últimos 30 días):\n[");
-        for (int i = 0; i < moods.size(); i++) {
-            MoodEntry m = moods.get(i);
-            if (i > 0) sb.append(",");
-            sb.append(String.format("{\"fecha\":\"%s\",\"puntuacion\":%d",
-                    m.getCreatedAt().format(DATE_FMT), m.getMoodScore()));
-            if (m.getTags() != null) sb.append(",\"tags\":\"").append(m.getTags()).append("\"");
-            if (m.getSleepHours() != null) sb.append(",\"horasSueno\":").append(m.getSleepHours());
-            if (m.getSleepQuality() != null) sb.append(",\"calidadSueno\":").append(m.getSleepQuality());
-            sb.append("}");
+    private String buildDashboardPrompt(InsightFeatures f) {
+        StringBuilder sb = new StringBuilder(DASHBOARD_PROMPT_CAPACITY);
+        sb.append("Analiza los siguientes datos agregados de bienestar de un usuario (últimos 30 días) y proporciona perspectivas personalizadas.\n\n");
+
+        sb.append("RESUMEN: entradas=").append(f.entries())
+          .append(", diasRegistrados=").append(f.daysLogged())
+          .append(", promedio=");
+        appendDecimal(sb, f.average(), false);
+        sb.append(", tendencia=");
+        appendDecimal(sb, f.trend(), true);
+        sb.append(f.trend() > 0.1 ? " (mejorando)" : f.trend() < -0.1 ? " (empeorando)" : " (estable)")
+          .append(", rachaActual=").append(f.currentStreak())
+          .append(", entradasBajas(<=2)=").append(f.lowEntries()).append('\n');
+
+        sb.append("PROMEDIO SEMANAL (0=última semana):");
+        for (InsightFeatures.WeekMean w : f.weeks()) {
+            sb.append(" s").append(w.weeksAgo()).append('=');
+            appendDecimal(sb, w.mean(), false);
+            sb.append("(n").append(w.count()).append(')');
         }
-        sb.append("]\n\n");
-
-        sb.append(String.format("ESTADÍSTICAS:\n- Promedio: %.1f\n- Tendencia: %+.2f (%s)\n- Racha actual: %d días\n- Entradas totales: %d\n\n",
-                stats.average(), stats.trend(), stats.trend() > 0.1 ? "mejorando" : stats.trend() < -0.1 ? "empeorando" : "estable",
-                stats.currentStreak(), stats.totalEntries()));
-
-        if (!assessments.isEmpty()) {
-            sb.append("EVALUACIONES RECIENTES:\n[");
-            int count = 0;
-            for (AssessmentResult a : assessments) {
-                if (count >= 8) break;
-                if (count > 0) sb.append(",");
-                sb.append(String.format("{\"tipo\":\"%s\",\"puntaje\":%d,\"categoria\":\"%s\",\"fecha\":\"%s\"}",
-                        a.getAssessmentType(), a.getTotal(), a.getCategory(),
-                        a.getCreatedAt().format(DATE_FMT)));
-                count++;
+        sb.append('\n');
+
+        sb.append("VOLATILIDAD: desviacion=");
+        appendDecimal(sb, f.stdDev(), false);
+        sb.append(", cambioMedioEntreEntradas=");
+        appendDecimal(sb, f.meanAbsChange(), false);
+        sb.append('\n');
+
+        if (!f.sleep().isEmpty()) {
+            sb.append("SUEÑO (ánimo medio por horas dormidas):");
+            for (InsightFeatures.SleepBucket b : f.sleep()) {
+                sb.append(' ').append(b.label()).append('=');
+                appendDecimal(sb, b.meanMood(), false);
+                sb.append("(n").append(b.count()).append(')');
             }
-            sb.append("]\n\n");
+            if (f.sleepMoodCorrelation() != null) {
+                sb.append(", correlacionHorasAnimo=");
+                appendDecimal(sb, f.sleepMoodCorrelation(), true);
+            }
+            sb.append('\n');
         }
 
-        sb.append("""
-                CONTEXTO DE ESCALAS:
-                - GAD-7 (ansiedad): 0-4 mínima, 5-9 leve, 10-14 moderada, 15-21 severa
-                - PHQ-9 (depresión): 0-4 mínima, 5-9 leve, 10-14 moderada, 15-19 moderadamente severa, 20-27 severa
+        if (!f.tags().isEmpty()) {
+            sb.append("TAGS (ánimo medio, diferencia vs promedio):");
+            for (InsightFeatures.TagImpact t : f.tags()) {
+                sb.append(' ').append(t.tag()).append('=');
+                appendDecimal(sb, t.mean(), false);
+                sb.append('(');
+                appendDecimal(sb, t.delta(), true);
+                sb.append(",n").append(t.count()).append(')');
+            }
+            sb.append('\n');
+        }
 
-                Responde SOLO con un objeto JSON con esta estructura exacta (sin backticks ni markdown):
-                {
-                  "patrones": "Descripción de patrones detectados en 2-3 oraciones",
-                  "correlacionSueno": "Análisis de la relación sueño-ánimo en 1-2 oraciones",
-                  "analisisTags": "Análisis de actividades y su impacto en 1-2 oraciones",
-                  "recomendaciones": ["recomendación 1 concreta", "recomendación 2 concreta", "recomendación 3 concreta"],
-                  "riesgo": {"nivel": "bajo|medio|alto", "mensaje": "Mensaje empático sobre el estado general"},
-                  "disclaimer": "%s"
-                }""".formatted(DISCLAIMER));
+        if (!f.assessments().isEmpty()) {
+            sb.append("EVALUACIONES RECIENTES:");
+            for (InsightFeatures.LatestAssessment a : f.assessments()) {
+                sb.append(' ').append(a.type()).append('=').append(a.total())
+                  .append(" (").append(a.category()).append(", ").append(a.date());
+                if (a.change() != null) {
+                    sb.append(", cambio ").append(a.change() >= 0 ? "+" : "").append(a.change());
+                }
+                sb.append(')');
+            }
+            sb.append('\n');
+        }
 
+        sb.append('\n').append(DASHBOARD_INSTRUCTIONS);
         return sb.toString();
     }
 
+    // One decimal, optionally signed, without going through String.format
+    private static void appendDecimal(StringBuilder sb, double value, boolean signed) {
+        long tenths = Math.round(value * 10);
+        if (tenths < 0) {
+            sb.append('-');
+            tenths = -tenths;
+        } else if (signed) {
+            sb.append('+');
+        }
+        sb.append(tenths / 10).append('.').append(tenths % 10);
+    }
+
     private String buildAssessmentPrompt(String type, int total, String category, int[] answers, List<AssessmentResult> history) {
         String typeName = type.equalsIgnoreCase("GAD7") ? "GAD-7 (ansiedad generalizada)" : "PHQ-9 (depresión)";
         int maxScore = type.equalsIgnoreCase("GAD7") ? 21 : 27;
@@ -216,34 +375,20 @@ public class AiInsightService {
         return sb.toString();
     }
 
-    private String callClaude(String userMessage) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.set("x-api-key", apiKey);
-        headers.set("anthropic-version", "2023-06-01");
-
-        Map<String, Object> body = new LinkedHashMap<>();
-        body.put("model", MODEL);
-        body.put("max_tokens", 1024);
-        body.put("system", SYSTEM_PROMPT);
-        body.put("messages", List.of(Map.of("role", "user", "content", userMessage)));
-
-        HttpEntity<Map<String, Object>> request = new HttpEntity<>(body, headers);
-
-        ResponseEntity<String> response = restTemplate.exchange(
-                CLAUDE_API_URL, HttpMethod.POST, request, String.class);
-
-        // Extract content[0].text from the response
-        JsonNode root = parseJson(response.getBody());
-        JsonNode content = root.path("content");
-        if (content.isArray() && !content.isEmpty()) {
-            String text = content.get(0).path("text").asText();
-            // Validate it's valid JSON
-            parseJson(text);
-            return text;
-        }
+    private AnthropicClient.Reply callClaude(Long quotaUserId, String userMessage) {
+        AnthropicClient.Reply reply = governor.execute(quotaUserId,
+                () -> client.createMessage(MODEL, SYSTEM_PROMPT, userMessage, 1024));
+        // Validate it's valid JSON
+        parseJson(reply.text());
+        return reply;
+    }
 
-        throw new RuntimeException("Unexpected Claude API response format");
+    private AnthropicClient.Reply streamClaude(Long quotaUserId, String userMessage, Consumer<String> onDelta) {
+        AnthropicClient.Reply reply = governor.execute(quotaUserId,
+                () -> client.streamMessage(MODEL, SYSTEM_PROMPT, userMessage, 1024, onDelta));
+        // Validate the assembled text before it reaches the cache
+        parseJson(reply.text());
+        return reply;
     }
 
     private JsonNode parseJson(String json) {
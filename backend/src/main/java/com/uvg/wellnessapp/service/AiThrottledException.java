@@ -0,0 +1,21 @@
+package com.uvg.wellnessapp.service;
+
+/**
+ * Thrown by {@link AiGovernor} when a model call is refused locally: the user is over
+ * their rate, the daily token budget is spent or the global queue is full.
+ */
+public class AiThrottledException extends AiUnavailableException {
+
+    public enum Reason { USER_RATE, DAILY_BUDGET, BUSY }
+
+    private final Reason reason;
+
+    public AiThrottledException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,17 @@
+package com.uvg.wellnessapp.service;
+
+/**
+ * Thrown when the model API cannot serve a call: the circuit breaker is open,
+ * retries were exhausted or the call deadline passed.
+ * Callers are expected to fall back to a cached or local response.
+ */
+public class AiUnavailableException extends RuntimeException {
+
+    public AiUnavailableException(String message) {
+        super(message);
+    }
+
+    public AiUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,449 @@
+package com.uvg.wellnessapp.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Client for the Anthropic Messages API.
+ * Uses a single JDK {@link HttpClient} (HTTP/2, pooled keep-alive connections) with a
+ * connect timeout and a per-call deadline that bounds each response, body included, and the retries.
+ * 429/5xx responses and transport errors are retried with jittered exponential backoff
+ * honoring {@code retry-after}; repeated failures open a circuit breaker so callers fail
+ * fast with {@link AiUnavailableException} and serve a cached or fallback response.
+ * Streams are watched separately: one that goes quiet or runs past its own deadline is closed.
+ * The base URL is configurable so a local stub server can stand in for the API.
+ */
+@Component
+public class AnthropicClient {
+
+    private static final Logger log = LoggerFactory.getLogger(AnthropicClient.class);
+    private static final String API_VERSION = "2023-06-01";
+    private static final Set<Integer> RETRYABLE_STATUS = Set.of(429, 500, 502, 503, 504, 529);
+    private static final long BASE_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 8_000;
+    private static final long WATCHDOG_PERIOD_MS = 1_000;
+
+    // Only a successful stream is handed over unread; error bodies are read whole, within the call deadline
+    private static final HttpResponse.BodyHandler<Stream<String>> STREAM_HANDLER = info -> info.statusCode() / 100 == 2
+            ? HttpResponse.BodySubscribers.ofLines(StandardCharsets.UTF_8)
+            : HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8), Stream::of);
+
+    private final HttpClient http;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CircuitBreaker breaker;
+    private final URI messagesUri;
+    private final String apiKey;
+    private final Duration callTimeout;
+    private final int maxRetries;
+    private final long streamIdleTimeoutMs;
+    private final long streamTimeoutMs;
+    private final ScheduledExecutorService watchdog;
+
+    public record Reply(String text, int inputTokens, int outputTokens) {
+        public int totalTokens() { return inputTokens + outputTokens; }
+    }
+
+    public AnthropicClient(
+            @Value("${anthropic.api-key:}") String apiKey,
+            @Value("${anthropic.base-url:https://api.anthropic.com}") String baseUrl,
+            @Value("${anthropic.connect-timeout-ms:3000}") long connectTimeoutMs,
+            @Value("${anthropic.call-timeout-ms:30000}") long callTimeoutMs,
+            @Value("${anthropic.max-retries:3}") int maxRetries,
+            @Value("${anthropic.stream-idle-timeout-ms:15000}") long streamIdleTimeoutMs,
+            @Value("${anthropic.stream-timeout-ms:60000}") long streamTimeoutMs,
+            @Value("${anthropic.breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${anthropic.breaker.open-seconds:30}") long openSeconds
+    ) {
+        this.apiKey = apiKey;
+        this.messagesUri = URI.create(baseUrl.replaceAll("/+$", "") + "/v1/messages");
+        this.callTimeout = Duration.ofMillis(callTimeoutMs);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.streamIdleTimeoutMs = streamIdleTimeoutMs;
+        this.streamTimeoutMs = streamTimeoutMs;
+        this.breaker = new CircuitBreaker(failureThreshold, Duration.ofSeconds(openSeconds));
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "anthropic-stream-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    public boolean isConfigured() {
+        return apiKey != null && !apiKey.isBlank();
+    }
+
+    public boolean isCircuitOpen() {
+        return breaker.isOpen();
+    }
+
+    /**
+     * Sends a single-turn message and returns the text of the first content block.
+     *
+     * @throws AiUnavailableException if the circuit is open, the deadline passed or retries were exhausted
+     * @throws IllegalStateException if the API rejects the request (non-retryable 4xx) or answers with an unexpected shape
+     */
+    public Reply createMessage(String model, String system, String userMessage, int maxTokens) {
+        String body = buildBody(model, system, userMessage, maxTokens, false);
+        HttpResponse<String> response = send(body, HttpResponse.BodyHandlers.ofString(), text -> text);
+        return parseReply(response.body());
+    }
+
+    /**
+     * Same as {@link #createMessage} but uses the API's streaming mode, handing every text
+     * delta to {@code onDelta} as it arrives and returning the assembled reply at the end.
+     * Retries only happen before the stream starts; the call deadline bounds the time to the
+     * first byte. After that a watchdog closes the stream when no line arrives for
+     * {@code stream-idle-timeout-ms} or the whole stream outlives {@code stream-timeout-ms},
+     * which fails the call with {@link AiUnavailableException}.
+     */
+    public Reply streamMessage(String model, String system, String userMessage, int maxTokens, Consumer<String> onDelta) {
+        String body = buildBody(model, system, userMessage, maxTokens, true);
+        HttpResponse<Stream<String>> response = send(body, STREAM_HANDLER,
+                lines -> lines.collect(Collectors.joining("\n")));
+
+        StringBuilder text = new StringBuilder(2048);
+        int inputTokens = 0;
+        int outputTokens = 0;
+        long startedAt = System.nanoTime();
+        AtomicLong lastLineAt = new AtomicLong(startedAt);
+        AtomicReference<String> abortReason = new AtomicReference<>();
+        try (Stream<String> lines = response.body()) {
+            // Closing the body from another thread cancels the subscription and unblocks the reader
+            ScheduledFuture<?> check = watchdog.scheduleAtFixedRate(() -> {
+                long now = System.nanoTime();
+                String reason = now - lastLineAt.get() >= TimeUnit.MILLISECONDS.toNanos(streamIdleTimeoutMs)
+                        ? "no data for " + streamIdleTimeoutMs + "ms"
+                        : now - startedAt >= TimeUnit.MILLISECONDS.toNanos(streamTimeoutMs)
+                        ? "still open after " + streamTimeoutMs + "ms" : null;
+                if (reason != null && abortReason.compareAndSet(null, reason)) {
+                    lines.close();
+                }
+            }, WATCHDOG_PERIOD_MS, WATCHDOG_PERIOD_MS, TimeUnit.MILLISECONDS);
+            try {
+                Iterator<String> it = lines.iterator();
+                while (it.hasNext()) {
+                    String line = it.next();
+                    lastLineAt.set(System.nanoTime());
+                    if (!line.startsWith("data:")) {
+                        continue; // "event:" names and keep-alive blank lines
+                    }
+                    JsonNode event = readTree(line.substring(5).trim());
+                    switch (event.path("type").asText()) {
+                        case "message_start" -> inputTokens = event.path("message").path("usage").path("input_tokens").asInt(0);
+                        case "content_block_delta" -> {
+                            JsonNode delta = event.path("delta");
+                            if ("text_delta".equals(delta.path("type").asText())) {
+                                String chunk = delta.path("text").asText();
+                                text.append(chunk);
+                                onDelta.accept(chunk);
+                            }
+                        }
+                        case "message_delta" -> outputTokens = event.path("usage").path("output_tokens").asInt(outputTokens);
+                        case "error" -> {
+                            breaker.onFailure();
+                            throw new AiUnavailableException("Model stream error: " + event.path("error").path("message").asText());
+                        }
+                        default -> { }
+                    }
+                }
+            } finally {
+                check.cancel(false);
+            }
+        } catch (UncheckedIOException e) {
+            breaker.onFailure();
+            String reason = abortReason.get();
+            if (reason != null) {
+                log.warn("Closed model stream: {}", reason);
+                throw new AiUnavailableException("Model stream timed out: " + reason, e);
+            }
+            throw new AiUnavailableException("Model stream interrupted: " + e.getMessage(), e);
+        }
+        if (abortReason.get() != null) {
+            // Closed between two lines: what arrived is a truncated reply
+            breaker.onFailure();
+            throw new AiUnavailableException("Model stream timed out: " + abortReason.get());
+        }
+        return new Reply(text.toString(), inputTokens, outputTokens);
+    }
+
+    /**
+     * Sends the request with retries and returns the first 2xx response.
+     * {@code errorText} turns a non-2xx body into text for the error message.
+     */
+    private <T> HttpResponse<T> send(String body, HttpResponse.BodyHandler<T> handler, Function<T, String> errorText) {
+        if (!breaker.tryAcquire()) {
+            throw new AiUnavailableException("Model API circuit is open");
+        }
+
+        long deadline = System.nanoTime() + callTimeout.toNanos();
+        Exception lastError = null;
+
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            Duration remaining = Duration.ofNanos(deadline - System.nanoTime());
+            if (remaining.isNegative() || remaining.isZero()) {
+                break;
+            }
+
+            Optional<Duration> retryAfter = Optional.empty();
+            IllegalStateException rejected = null;
+            try {
+                HttpResponse<T> response = exchange(body, handler, remaining);
+                int status = response.statusCode();
+                if (status / 100 == 2) {
+                    breaker.onSuccess();
+                    return response;
+                }
+                String detail = errorText.apply(response.body());
+                if (RETRYABLE_STATUS.contains(status)) {
+                    lastError = new IOException("Model API returned " + status);
+                    retryAfter = parseRetryAfter(response.headers().firstValue("retry-after").orElse(null));
+                } else {
+                    rejected = new IllegalStateException("Model API returned " + status + ": " + abbreviate(detail));
+                }
+            } catch (IOException e) {
+                lastError = e;
+            } catch (UncheckedIOException e) {
+                lastError = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                breaker.onFailure();
+                throw new AiUnavailableException("Interrupted while calling the model API", e);
+            } catch (RuntimeException e) {
+                // Whatever it is, it must end a half-open trial, or the circuit never closes again
+                breaker.onFailure();
+                throw e;
+            }
+            if (rejected != null) {
+                // The upstream is healthy, the request is wrong: do not count it against the breaker
+                breaker.onSuccess();
+                throw rejected;
+            }
+
+            if (attempt == maxRetries) {
+                break;
+            }
+            long sleepMs = retryAfter.isPresent() ? retryAfter.get().toMillis() : jitteredBackoff(attempt);
+            long remainingMs = Duration.ofNanos(deadline - System.nanoTime()).toMillis();
+            if (sleepMs >= remainingMs) {
+                log.debug("Not retrying model API call: backoff of {}ms exceeds the remaining {}ms", sleepMs, remainingMs);
+                break;
+            }
+            log.debug("Retrying model API call in {}ms (attempt {}): {}", sleepMs, attempt + 1, lastError.toString());
+            try {
+                Thread.sleep(sleepMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        breaker.onFailure();
+        String reason = lastError == null ? "deadline exceeded"
+                : lastError.getMessage() != null ? lastError.getMessage() : lastError.getClass().getSimpleName();
+        throw new AiUnavailableException("Model API unavailable: " + reason, lastError);
+    }
+
+    /**
+     * One attempt, bounded by {@code remaining} as a whole: {@link HttpRequest#timeout} only
+     * covers the wait for the headers, and a body handler like {@code ofString} keeps reading
+     * after that. On timeout the exchange is cancelled and an {@link HttpTimeoutException} is
+     * thrown, which the caller retries like any other transport error.
+     */
+    private <T> HttpResponse<T> exchange(String body, HttpResponse.BodyHandler<T> handler, Duration remaining)
+            throws IOException, InterruptedException {
+        CompletableFuture<HttpResponse<T>> future = http.sendAsync(newRequest(body, remaining), handler);
+        try {
+            return future.get(remaining.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new HttpTimeoutException("No complete response within " + remaining.toMillis() + "ms");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private String buildBody(String model, String system, String userMessage, int maxTokens, boolean stream) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", model);
+        body.put("max_tokens", maxTokens);
+        body.put("system", system);
+        body.put("messages", List.of(Map.of("role", "user", "content", userMessage)));
+        if (stream) {
+            body.put("stream", true);
+        }
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not serialize model request", e);
+        }
+    }
+
+    private HttpRequest newRequest(String body, Duration timeout) {
+        return HttpRequest.newBuilder(messagesUri)
+                .timeout(timeout)
+                .header("content-type", "application/json")
+                .header("x-api-key", apiKey)
+                .header("anthropic-version", API_VERSION)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private Reply parseReply(String json) {
+        JsonNode root = readTree(json);
+        JsonNode content = root.path("content");
+        if (!content.isArray() || content.isEmpty()) {
+            throw new IllegalStateException("Unexpected model API response format");
+        }
+        JsonNode usage = root.path("usage");
+        return new Reply(content.get(0).path("text").asText(),
+                usage.path("input_tokens").asInt(0), usage.path("output_tokens").asInt(0));
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid JSON response from model API", e);
+        }
+    }
+
+    // Full jitter: uniform in [0, min(max, base * 2^attempt)]
+    private static long jitteredBackoff(int attempt) {
+        long cap = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 10));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    // retry-after is either delta-seconds or an HTTP date
+    static Optional<Duration> parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim()))));
+        } catch (NumberFormatException ignored) {
+            // fall through to the date form
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration d = Duration.between(ZonedDateTime.now(at.getZone()), at);
+            return Optional.of(d.isNegative() ? Duration.ZERO : d);
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static String abbreviate(String s) {
+        if (s == null) return "";
+        return s.length() > 200 ? s.substring(0, 200) : s;
+    }
+
+    /**
+     * Consecutive-failure circuit breaker. After {@code threshold} failed calls it stays open
+     * for {@code openFor}, then lets a single trial call through (half-open).
+     */
+    static final class CircuitBreaker {
+        private final int threshold;
+        private final long openForNanos;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean open;
+        private boolean trialInFlight;
+
+        CircuitBreaker(int threshold, Duration openFor) {
+            this.threshold = Math.max(1, threshold);
+            this.openForNanos = openFor.toNanos();
+        }
+
+        synchronized boolean tryAcquire() {
+            if (!open) {
+                return true;
+            }
+            if (!trialInFlight && System.nanoTime() - openedAt >= openForNanos) {
+                trialInFlight = true;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized boolean isOpen() {
+            return open;
+        }
+
+        synchronized void onSuccess() {
+            if (open) {
+                log.info("Model API circuit closed");
+            }
+            consecutiveFailures = 0;
+            open = false;
+            trialInFlight = false;
+        }
+
+        synchronized void onFailure() {
+            consecutiveFailures++;
+            if (trialInFlight || consecutiveFailures >= threshold) {
+                if (!open) {
+                    log.warn("Model API circuit opened after {} consecutive failures", consecutiveFailures);
+                }
+                open = true;
+                openedAt = System.nanoTime();
+            }
+            trialInFlight = false;
+        }
+    }
+}
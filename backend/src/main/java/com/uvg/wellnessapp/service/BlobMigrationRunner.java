@@ -0,0 +1,115 @@
+package com.uvg.wellnessapp.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Copies the files of a local upload directory into the configured {@link BlobStore}, keeping
+ * their keys, so existing resources keep working after switching {@code app.storage.backend}.
+ * <p>
+ * Runs in the background at startup when {@code app.storage.migrate.source} is set (e.g. the old
+ * {@code /data/uploads}). Files already present with the same size are skipped, so an
+ * interrupted run can simply be started again. The source is only read, never changed.
+ */
+@Component
+public class BlobMigrationRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobMigrationRunner.class);
+
+    private final BlobStore blobs;
+    private final Path source; // null: nothing to migrate
+    private final int concurrency;
+
+    public BlobMigrationRunner(BlobStore blobs,
+                               @Value("${app.storage.migrate.source:}") String source,
+                               @Value("${app.storage.migrate.concurrency:8}") int concurrency) {
+        this.blobs = blobs;
+        this.source = source.isBlank() ? null : Path.of(source).toAbsolutePath().normalize();
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (source == null) {
+            return;
+        }
+        Thread.ofVirtual().name("blob-migration").start(this::migrate);
+    }
+
+    void migrate() {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(source)) {
+            files = listing.filter(Files::isRegularFile)
+                    .filter(p -> !p.getFileName().toString().startsWith("."))
+                    .toList();
+        } catch (IOException e) {
+            log.error("Blob migration: cannot list {}: {}", source, e.getMessage());
+            return;
+        }
+        log.info("Blob migration started: {} files from {}", files.size(), source);
+
+        long start = System.nanoTime();
+        AtomicInteger copied = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        int logEvery = Math.max(1, files.size() / 10);
+        Semaphore permits = new Semaphore(concurrency);
+
+        // Uploads are network-bound: a few in flight hide the round-trip time
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path file : files) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Blob migration interrupted");
+                    break;
+                }
+                executor.submit(() -> {
+                    String key = file.getFileName().toString();
+                    try {
+                        long size = Files.size(file);
+                        var existing = blobs.stat(key);
+                        if (existing.isPresent() && existing.get().size() == size) {
+                            skipped.incrementAndGet();
+                        } else {
+                            blobs.put(key, file);
+                            copied.incrementAndGet();
+                            bytes.addAndGet(size);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        failed.incrementAndGet();
+                        log.warn("Blob migration: {} failed: {}", key, e.getMessage());
+                    } finally {
+                        permits.release();
+                    }
+                    int done = copied.get() + skipped.get() + failed.get();
+                    if (done % logEvery == 0) {
+                        log.info("Blob migration: {}/{} files", done, files.size());
+                    }
+                });
+            }
+        }
+
+        long ms = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        log.info("Blob migration finished in {} ms: {} copied ({} MiB, {} MiB/s), {} already present, {} failed",
+                ms, copied.get(), bytes.get() / (1024 * 1024),
+                String.format("%.1f", bytes.get() / 1048.576 / ms), skipped.get(), failed.get());
+    }
+}
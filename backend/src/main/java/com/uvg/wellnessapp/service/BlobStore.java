@@ -0,0 +1,67 @@
+package com.uvg.wellnessapp.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Where {@link FileStorageService} keeps file bytes, by key.
+ * The local store keeps them in {@code app.storage.uploadDir} on this node; the S3 store keeps
+ * them in a bucket shared by every node. Keys are flat names; keys starting with a dot are
+ * internal (pending deletes, quarantined orphans) and only listed by {@link #keys(String)}.
+ * Selected with {@code app.storage.backend} ({@code local} or {@code s3}).
+ */
+public interface BlobStore {
+
+    record BlobInfo(long size, long lastModified) {}
+
+    /** Copies the file in under {@code key}, replacing any blob there. The file is left as is. */
+    void put(String key, Path file) throws IOException;
+
+    /** Like {@link #put}, but the file is consumed; stores on the same disk just rename it. */
+    default void moveIn(String key, Path file) throws IOException {
+        put(key, file);
+        Files.deleteIfExists(file);
+    }
+
+    Optional<BlobInfo> stat(String key) throws IOException;
+
+    InputStream open(String key) throws IOException;
+
+    /** Renames a blob without moving its bytes through this node. */
+    void rename(String from, String to) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    /** Every public key in the store. Close the stream when done. */
+    Stream<String> keys() throws IOException;
+
+    /** Every key starting with {@code prefix}, internal ones included. Close the stream when done. */
+    Stream<String> keys(String prefix) throws IOException;
+
+    /** The blob as a file on this node, for zero-copy serving; empty for remote stores. */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+
+    /**
+     * A short-lived URL from which clients can download the blob directly, so its bytes never pass
+     * through the application; empty if the store cannot issue one.
+     */
+    default Optional<URI> presignedGet(String key, String contentType, String cacheControl) {
+        return Optional.empty();
+    }
+
+    /** How long {@link #presignedGet} URLs stay valid. */
+    default Duration presignTtl() {
+        return Duration.ZERO;
+    }
+
+    /** Local directory for temporary and partial uploads, on the same disk as local blobs. */
+    Path scratchDir();
+}
@@ -0,0 +1,261 @@
+package com.uvg.wellnessapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers queued mail from {@code email_outbox}.
+ * <p>
+ * Each poll claims a batch of due rows with {@code FOR UPDATE SKIP LOCKED}, so several
+ * nodes can dispatch without sending a message twice; the claim pushes the row's
+ * {@code next_attempt_at} forward instead of holding a transaction open during SMTP, and
+ * lapses on its own if the node dies. A batch goes out over one SMTP connection.
+ * Failed messages are retried with exponential backoff until {@code max-attempts}.
+ */
+@Service
+public class EmailOutboxDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailOutboxDispatcher.class);
+
+    // Oldest due rows first; rows claimed by another node are skipped, not waited on
+    private static final String CLAIM_SQL = """
+            WITH due AS (
+                SELECT id FROM email_outbox
+                WHERE status = 'PENDING' AND next_attempt_at <= now()
+                ORDER BY next_attempt_at
+                LIMIT :batchSize
+                FOR UPDATE SKIP LOCKED
+            )
+            UPDATE email_outbox o SET next_attempt_at = now() + make_interval(secs => :claimSeconds)
+            FROM due WHERE o.id = due.id
+            RETURNING o.id, o.recipient, o.subject, o.body, o.attempts, o.created_at""";
+
+    private static final String SENT_SQL = """
+            UPDATE email_outbox SET status = 'SENT', sent_at = now(), attempts = attempts + 1, last_error = NULL
+            WHERE id = :id""";
+
+    private static final String RETRY_SQL = """
+            UPDATE email_outbox SET
+                attempts = attempts + 1,
+                last_error = :error,
+                next_attempt_at = now() + make_interval(secs => :delaySeconds),
+                status = CASE WHEN attempts + 1 >= :maxAttempts OR :permanent THEN 'FAILED' ELSE 'PENDING' END
+            WHERE id = :id""";
+
+    private static final String PENDING_SQL = "SELECT count(*) FROM email_outbox WHERE status = 'PENDING'";
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final JavaMailSender mailSender;
+    private final String fromEmail;
+
+    @Value("${app.mail.outbox.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.mail.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.mail.outbox.max-batches-per-poll:10}")
+    private int maxBatchesPerPoll;
+
+    @Value("${app.mail.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.mail.outbox.backoff-base-seconds:30}")
+    private long backoffBaseSeconds;
+
+    @Value("${app.mail.outbox.backoff-max-seconds:3600}")
+    private long backoffMaxSeconds;
+
+    @Value("${app.mail.outbox.claim-seconds:120}")
+    private long claimSeconds;
+
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter failed;
+    private final Timer batchTimer;
+    private final Timer deliveryLag;
+    private final AtomicLong pending = new AtomicLong();
+
+    private record Outgoing(long id, String recipient, String subject, String body, int attempts,
+                            OffsetDateTime createdAt) {}
+
+    public EmailOutboxDispatcher(NamedParameterJdbcTemplate jdbc,
+                                 JavaMailSender mailSender,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${spring.mail.username:}") String mailUsername) {
+        this.jdbc = jdbc;
+        this.mailSender = mailSender;
+        // MAIL_USERNAME defaults to blank, which is not a valid sender
+        this.fromEmail = mailUsername.isBlank() ? "noreply@wellnessapp.com" : mailUsername;
+        this.sent = meterRegistry.counter("email.outbox.delivered", "result", "sent");
+        this.retried = meterRegistry.counter("email.outbox.delivered", "result", "retry");
+        this.failed = meterRegistry.counter("email.outbox.delivered", "result", "failed");
+        this.batchTimer = Timer.builder("email.outbox.batch").register(meterRegistry);
+        this.deliveryLag = Timer.builder("email.outbox.lag").register(meterRegistry);
+        Gauge.builder("email.outbox.pending", pending, AtomicLong::get).register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${app.mail.outbox.poll-ms:5000}", fixedDelayString = "${app.mail.outbox.poll-ms:5000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            for (int i = 0; i < maxBatchesPerPoll; i++) {
+                if (dispatchBatch() < batchSize) {
+                    break;
+                }
+            }
+            Long count = jdbc.getJdbcTemplate().queryForObject(PENDING_SQL, Long.class);
+            pending.set(count == null ? 0 : count);
+        } catch (DataAccessException e) {
+            log.warn("Email outbox poll failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Claims and sends one batch.
+     *
+     * @return the number of rows claimed
+     */
+    int dispatchBatch() {
+        List<Outgoing> batch = jdbc.query(CLAIM_SQL, new MapSqlParameterSource()
+                        .addValue("batchSize", batchSize)
+                        .addValue("claimSeconds", claimSeconds),
+                (rs, i) -> new Outgoing(
+                        rs.getLong("id"),
+                        rs.getString("recipient"),
+                        rs.getString("subject"),
+                        rs.getString("body"),
+                        rs.getInt("attempts"),
+                        rs.getObject("created_at", OffsetDateTime.class)));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        // MimeMessage keeps identity equality, which is what the failure map is keyed on
+        Map<MimeMessage, Outgoing> messages = new LinkedHashMap<>();
+        for (Outgoing mail : batch) {
+            try {
+                messages.put(toMimeMessage(mail), mail);
+            } catch (MessagingException e) {
+                // A message that cannot be built will not get better on retry
+                markFailed(mail, e, true);
+            }
+        }
+
+        if (messages.isEmpty()) {
+            return batch.size();
+        }
+
+        Map<Object, Exception> failures = Map.of();
+        long start = System.nanoTime();
+        try {
+            mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            // Per-message failures; a connection failure lists every message not yet sent
+            failures = e.getFailedMessages();
+            if (failures.isEmpty()) {
+                failures = allFailed(messages, e);
+            }
+        } catch (MailException e) {
+            failures = allFailed(messages, e);
+        } finally {
+            batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        List<MapSqlParameterSource> delivered = new ArrayList<>();
+        for (Map.Entry<MimeMessage, Outgoing> entry : messages.entrySet()) {
+            Exception error = failures.get(entry.getKey());
+            Outgoing mail = entry.getValue();
+            if (error != null) {
+                markFailed(mail, error, false);
+            } else {
+                delivered.add(new MapSqlParameterSource("id", mail.id()));
+                sent.increment();
+                if (mail.createdAt() != null) {
+                    deliveryLag.record(Duration.between(mail.createdAt(), OffsetDateTime.now()));
+                }
+            }
+        }
+        if (!delivered.isEmpty()) {
+            jdbc.batchUpdate(SENT_SQL, delivered.toArray(new MapSqlParameterSource[0]));
+        }
+
+        log.debug("Email outbox batch: {} claimed, {} sent, {} failed", batch.size(), delivered.size(), failures.size());
+        return batch.size();
+    }
+
+    private MimeMessage toMimeMessage(Outgoing mail) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, false, StandardCharsets.UTF_8.name());
+        helper.setFrom(fromEmail);
+        helper.setTo(mail.recipient());
+        helper.setSubject(mail.subject());
+        helper.setText(mail.body());
+        return message;
+    }
+
+    private void markFailed(Outgoing mail, Exception error, boolean permanent) {
+        int attempt = mail.attempts() + 1;
+        boolean last = permanent || attempt >= maxAttempts;
+        String message = error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage();
+        jdbc.update(RETRY_SQL, new MapSqlParameterSource()
+                .addValue("id", mail.id())
+                .addValue("error", message.length() > 1000 ? message.substring(0, 1000) : message)
+                .addValue("delaySeconds", backoffSeconds(attempt))
+                .addValue("maxAttempts", maxAttempts)
+                .addValue("permanent", permanent));
+        if (last) {
+            failed.increment();
+            log.error("Email {} to {} failed permanently after {} attempts: {}", mail.id(), mail.recipient(), attempt, message);
+        } else {
+            retried.increment();
+            log.warn("Email {} to {} failed (attempt {}), will retry: {}", mail.id(), mail.recipient(), attempt, message);
+        }
+    }
+
+    // base * 2^(attempt-1), capped, with +-20% jitter so a recovering server is not hit all at once
+    private long backoffSeconds(int attempt) {
+        long delay = backoffBaseSeconds << Math.min(20, attempt - 1);
+        delay = Math.min(backoffMaxSeconds, delay);
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Math.max(1, Math.round(delay * jitter));
+    }
+
+    private static Map<Object, Exception> allFailed(Map<MimeMessage, Outgoing> messages, Exception e) {
+        Map<Object, Exception> failures = new IdentityHashMap<>();
+        for (MimeMessage message : messages.keySet()) {
+            failures.put(message, e);
+        }
+        return failures;
+    }
+}
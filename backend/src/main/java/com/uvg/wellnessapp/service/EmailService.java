@@ -1,36 +1,34 @@
 package com.uvg.wellnessapp.service;
 
+import com.uvg.wellnessapp.domain.EmailOutbox;
+import com.uvg.wellnessapp.repository.EmailOutboxRepository;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+/**
+ * Builds application emails and queues them in {@code email_outbox}.
+ * The row is written in the caller's transaction, so the mail goes out only if that
+ * transaction commits and SMTP never runs on a request thread; delivery is done by
+ * {@link EmailOutboxDispatcher}.
+ */
 @Service
 public class EmailService {
 
-    private final JavaMailSender mailSender;
-
-    @Value("${spring.mail.username:noreply@wellnessapp.com}")
-    private String fromEmail;
+    private final EmailOutboxRepository outbox;
 
     @Value("${app.frontend.url:http://localhost:5173}")
     private String frontendUrl;
 
-    public EmailService(JavaMailSender mailSender) {
-        this.mailSender = mailSender;
+    public EmailService(EmailOutboxRepository outbox) {
+        this.outbox = outbox;
     }
 
     public void sendPasswordResetEmail(String toEmail, String token) {
         // Use query param only (no path) since frontend is a SPA
         String resetLink = frontendUrl + "?token=" + token;
 
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setFrom(fromEmail);
-        message.setTo(toEmail);
-        message.setSubject("WellnessApp - Restablecer Contraseña");
-        message.setText(buildPasswordResetEmailBody(resetLink));
-
-        mailSender.send(message);
+        outbox.save(new EmailOutbox(toEmail, "WellnessApp - Restablecer Contraseña",
+                buildPasswordResetEmailBody(resetLink)));
     }
 
     private String buildPasswordResetEmailBody(String resetLink) {
@@ -1,18 +1,39 @@
 package com.uvg.wellnessapp.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 @Service
 public class FileStorageService {
@@ -46,17 +67,67 @@ public class FileStorageService {
 
   private static final long MAX_FILE_SIZE = 25 * 1024 * 1024; // 25 MB
 
-  private final Path root;
+  // Types that may exceed MAX_FILE_SIZE when uploaded in chunks
+  private static final Set<String> MEDIA_EXTENSIONS = Set.of(".mp3", ".wav", ".ogg", ".mp4", ".webm");
 
-  public FileStorageService(@Value("${app.storage.uploadDir}") String uploadDir) throws Exception {
-    this.root = Path.of(uploadDir).toAbsolutePath().normalize();
-    Files.createDirectories(this.root);
+  // Content hashes of served files, revalidated against size and mtime on every lookup
+  private static final int MAX_CACHED_METADATA = 10_000;
+
+  // Keys minted since content addressing: SHA-256 in hex plus the extension
+  static final Pattern CONTENT_KEY = Pattern.compile("[0-9a-f]{64}\\.[a-z0-9]+");
+
+  // Uploads in progress and files awaiting commit of their delete; never served
+  private static final String TEMP_PREFIX = ".upload-";
+  static final String TRASH_PREFIX = ".deleted-";
+
+  private static final String REFERENCE_SQL = """
+      INSERT INTO stored_blobs (blob_key, size_bytes, ref_count) VALUES (?, ?, 1)
+      ON CONFLICT (blob_key) DO UPDATE
+        SET ref_count = stored_blobs.ref_count + 1, last_referenced_at = now()
+      RETURNING ref_count""";
+
+  private static final String RELEASE_SQL = """
+      UPDATE stored_blobs SET ref_count = ref_count - 1
+      WHERE blob_key = ? AND ref_count > 0
+      RETURNING ref_count""";
+
+  private static final String FORGET_SQL = "DELETE FROM stored_blobs WHERE blob_key = ? AND ref_count = 0";
+
+  private final BlobStore blobs;
+  private final Path scratch;
+  private final Path partialDir;
+  private final long maxMediaSize;
+  private final JdbcTemplate jdbc;
+  private final ConcurrentHashMap<String, StoredFile> metadata = new ConcurrentHashMap<>();
+  private final Map<String, Counter> blobsStored;
+
+  public FileStorageService(BlobStore blobs,
+                            @Value("${app.storage.upload.max-media-size:1GB}") DataSize maxMediaSize,
+                            JdbcTemplate jdbc,
+                            MeterRegistry meterRegistry) throws Exception {
+    this.blobs = blobs;
+    this.scratch = blobs.scratchDir();
+    this.partialDir = scratch.resolve(".partial");
+    this.maxMediaSize = maxMediaSize.toBytes();
+    this.jdbc = jdbc;
+    this.blobsStored = Map.of(
+        "new", meterRegistry.counter("storage.blobs.stored", "result", "new"),
+        "deduplicated", meterRegistry.counter("storage.blobs.stored", "result", "deduplicated"));
+    Files.createDirectories(this.partialDir);
   }
 
   public record Stored(String key, String url) {}
 
+  /** A file ready to be served from this node: where it is, its size and mtime, and its SHA-256 as a strong ETag. */
+  public record StoredFile(String key, Path path, long size, long lastModified, String etag) {}
+
+  /** A short-lived link to the file in remote storage, and how long it may be reused. */
+  public record DirectLink(URI url, Duration ttl) {}
+
   /**
-   * Validates and stores an uploaded file.
+   * Validates and stores an uploaded file under the SHA-256 of its content. Uploading content
+   * that is already stored adds a reference to the existing file instead of a second copy.
+   * Call it inside the transaction that saves the referencing row, so the count rolls back with it.
    * @param file the uploaded file
    * @return stored file info, or null if file is empty
    * @throws IllegalArgumentException if file type is not allowed
@@ -72,9 +143,31 @@ public class FileStorageService {
       throw new IllegalArgumentException("File size exceeds maximum allowed size of 25MB");
     }
 
+    String ext = validateType(file.getOriginalFilename(), file.getContentType());
+
+    try (InputStream inputStream = file.getInputStream()) {
+      return storeContent(inputStream, ext);
+    }
+  }
+
+  /**
+   * Stores a file generated by the application, e.g. a thumbnail, the same way as an upload.
+   * Outside a transaction the new reference commits at once; release it with {@link #delete}.
+   * @param data the file content
+   * @param ext the lower-case extension, with its dot
+   */
+  public Stored storeDerived(byte[] data, String ext) throws IOException {
+    return storeContent(new ByteArrayInputStream(data), ext);
+  }
+
+  /**
+   * Checks an upload's file name and declared content type against the whitelists.
+   * @return the lower-case extension, with its dot
+   * @throws IllegalArgumentException if the type is not allowed
+   */
+  public String validateType(String filename, String contentType) {
     // Extract and validate extension
-    String originalFilename = file.getOriginalFilename();
-    String ext = extractExtension(originalFilename);
+    String ext = extractExtension(filename);
 
     if (!isAllowedExtension(ext)) {
       log.warn("Rejected file upload with disallowed extension: {}", ext);
@@ -82,33 +175,97 @@ public class FileStorageService {
     }
 
     // Validate content type
-    String contentType = file.getContentType();
     if (contentType == null || !isAllowedContentType(contentType)) {
       log.warn("Rejected file upload with disallowed content type: {}", contentType);
       throw new IllegalArgumentException("File content type not allowed: " + contentType);
     }
+    return ext;
+  }
+
+  /** Largest file of this type accepted through resumable uploads; audio and video may be larger than documents. */
+  public long maxResumableSize(String ext) {
+    return MEDIA_EXTENSIONS.contains(ext) ? maxMediaSize : MAX_FILE_SIZE;
+  }
+
+  /**
+   * Deletes temp files in the scratch directory last modified before {@code before}: copies
+   * that a crash cut short, which nothing else would ever remove.
+   * @return how many were deleted
+   */
+  public int removeStaleTempFiles(Instant before) throws IOException {
+    int removed = 0;
+    try (var files = Files.list(scratch)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        String name = file.getFileName().toString();
+        if ((name.startsWith(TEMP_PREFIX) || name.startsWith(LocalBlobStore.COPY_PREFIX))
+            && Files.isRegularFile(file)
+            && Files.getLastModifiedTime(file).toInstant().isBefore(before)
+            && Files.deleteIfExists(file)) {
+          removed++;
+        }
+      }
+    }
+    return removed;
+  }
 
-    // Generate safe filename with UUID
-    String key = UUID.randomUUID() + ext.toLowerCase(Locale.ROOT);
+  /** Directory for uploads in progress, on the same file system as locally stored files. */
+  public Path partialDir() {
+    return partialDir;
+  }
 
-    // Ensure the destination is within the upload directory (prevent path traversal)
-    Path dest = root.resolve(key).normalize();
-    if (!dest.startsWith(root)) {
+  private Stored storeContent(InputStream content, String ext) throws IOException {
+    // Stream to a temp file next to the blobs, hashing on the way; the hash names the blob
+    MessageDigest digest = sha256();
+    Path temp = Files.createTempFile(scratch, TEMP_PREFIX, ".tmp");
+    try {
+      try (InputStream inputStream = new DigestInputStream(content, digest)) {
+        Files.copy(inputStream, temp, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return adopt(temp, HexFormat.of().formatHex(digest.digest()), ext);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Takes a complete file in the scratch directory (e.g. under {@link #partialDir()}) and
+   * stores it under its hash; a local store moves it rather than copying it. If that content
+   * is already stored the file is left where it is for the caller to delete.
+   * @param file the file to take over
+   * @param sha256Hex its SHA-256 in lower-case hex
+   * @param ext the lower-case extension, with its dot
+   */
+  public Stored adopt(Path file, String sha256Hex, String ext) throws IOException {
+    String key = sha256Hex + ext;
+    if (!CONTENT_KEY.matcher(key).matches()) {
       log.error("Path traversal attempt detected: {}", key);
       throw new IllegalArgumentException("Invalid file path");
     }
 
-    // Store the file using try-with-resources
-    try (InputStream inputStream = file.getInputStream()) {
-      Files.copy(inputStream, dest, StandardCopyOption.REPLACE_EXISTING);
+    // Takes the row lock, so a concurrent delete of the same blob finishes first
+    long size = Files.size(file);
+    Integer refs = jdbc.queryForObject(REFERENCE_SQL, Integer.class, key, size);
+    if (refs != null && refs > 1 && blobs.stat(key).isPresent()) {
+      blobsStored.get("deduplicated").increment();
+      log.info("File stored as a new reference to {} ({} references)", key, refs);
+    } else {
+      // Same content under the same name, so replacing a copy left behind earlier is harmless
+      blobs.moveIn(key, file);
+      blobsStored.get("new").increment();
+      log.info("File stored successfully: {}", key);
     }
-
-    log.info("File stored successfully: {}", key);
     return new Stored(key, "/files/" + key);
   }
 
+  /** SHA-256 of a file in lower-case hex, read in one pass. */
+  public static String sha256Hex(Path file) throws IOException {
+    return HexFormat.of().formatHex(hash(file).digest());
+  }
+
   /**
-   * Deletes a stored file.
+   * Drops one reference to a stored file, and deletes the file when it was the last one.
+   * Keys from before content addressing have no reference count and are deleted directly.
+   * Inside a transaction the file is only moved aside until commit and put back on rollback.
    * @param key the file key to delete
    */
   public void delete(String key) {
@@ -116,25 +273,157 @@ public class FileStorageService {
       return;
     }
 
+    // Validate key doesn't contain path traversal
+    if (!isValidKey(key)) {
+      log.error("Path traversal attempt in delete: {}", key);
+      return;
+    }
+
     try {
-      // Validate key doesn't contain path traversal
-      Path filePath = root.resolve(key).normalize();
-      if (!filePath.startsWith(root)) {
-        log.error("Path traversal attempt in delete: {}", key);
-        return;
+      if (CONTENT_KEY.matcher(key).matches()) {
+        List<Integer> refs = jdbc.queryForList(RELEASE_SQL, Integer.class, key);
+        if (refs.isEmpty()) {
+          log.warn("No references left to release for {}", key);
+          return;
+        }
+        if (refs.get(0) > 0) {
+          log.info("Released a reference to {} ({} left)", key, refs.get(0));
+          return;
+        }
+        // Still under the row lock: a concurrent store of the same content waits for us
+        jdbc.update(FORGET_SQL, key);
       }
 
-      boolean deleted = Files.deleteIfExists(filePath);
-      if (deleted) {
-        log.info("File deleted successfully: {}", key);
-      } else {
+      metadata.remove(key);
+      if (blobs.stat(key).isEmpty()) {
         log.warn("File not found for deletion: {}", key);
+        return;
       }
+      String trash = TRASH_PREFIX + UUID.randomUUID();
+      blobs.rename(key, trash);
+      afterCompletion(committed -> {
+        try {
+          if (committed) {
+            blobs.delete(trash);
+            log.info("File deleted successfully: {}", key);
+          } else {
+            blobs.rename(trash, key);
+          }
+        } catch (IOException e) {
+          log.error("Failed to finish deleting file {}: {}", key, e.getMessage());
+        }
+      });
     } catch (IOException e) {
       log.error("Failed to delete file {}: {}", key, e.getMessage());
     }
   }
 
+  /**
+   * Looks up a stored file for download.
+   * @param key the file key
+   * @return the file and its metadata, or empty if the key is invalid or the file does not exist
+   */
+  public Optional<StoredFile> find(String key) {
+    if (!isValidKey(key)) {
+      return Optional.empty();
+    }
+    Path path = blobs.localPath(key).orElse(null);
+    if (path == null) {
+      return Optional.empty();
+    }
+
+    try {
+      long size = Files.size(path);
+      long lastModified = Files.getLastModifiedTime(path).toMillis();
+      StoredFile cached = metadata.get(key);
+      if (cached != null && cached.size() == size && cached.lastModified() == lastModified) {
+        return Optional.of(cached);
+      }
+      String etag = contentEtag(key).orElse(null);
+      if (etag == null) {
+        etag = "\"" + HexFormat.of().formatHex(hash(path).digest()) + "\"";
+      }
+      StoredFile described = new StoredFile(key, path, size, lastModified, etag);
+      remember(described);
+      return Optional.of(described);
+    } catch (IOException e) {
+      log.error("Failed to read file {}: {}", key, e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * A presigned download link when files live in remote storage, so the bytes bypass this node.
+   * Empty for local storage; use {@link #find} then.
+   */
+  public Optional<DirectLink> directLink(String key, String contentType, String cacheControl) {
+    if (!isValidKey(key)) {
+      return Optional.empty();
+    }
+    return blobs.presignedGet(key, contentType, cacheControl).map(url -> new DirectLink(url, blobs.presignTtl()));
+  }
+
+  /** Content-addressed keys carry their SHA-256, so their ETag needs no I/O. */
+  public Optional<String> contentEtag(String key) {
+    return key != null && CONTENT_KEY.matcher(key).matches()
+        ? Optional.of("\"" + key.substring(0, 64) + "\"")
+        : Optional.empty();
+  }
+
+  /** Reads a stored file, wherever it is kept. */
+  public InputStream open(String key) throws IOException {
+    if (!isValidKey(key)) {
+      throw new IllegalArgumentException("Invalid file key: " + key);
+    }
+    return blobs.open(key);
+  }
+
+  private static boolean isValidKey(String key) {
+    return key != null && !key.isBlank() && !key.startsWith(".") && key.indexOf('/') < 0 && key.indexOf('\\') < 0;
+  }
+
+  private void remember(StoredFile file) {
+    if (metadata.size() >= MAX_CACHED_METADATA) {
+      metadata.clear();
+    }
+    metadata.put(file.key(), file);
+  }
+
+  private static MessageDigest hash(Path path) throws IOException {
+    MessageDigest digest = sha256();
+    ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        digest.update(buffer);
+        buffer.clear();
+      }
+    }
+    return digest;
+  }
+
+  // Runs once the current transaction ends (true if it committed); right away outside one
+  static void afterCompletion(Consumer<Boolean> action) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          action.accept(status == STATUS_COMMITTED);
+        }
+      });
+    } else {
+      action.accept(true);
+    }
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
   private String extractExtension(String filename) {
     return Optional.ofNullable(filename)
         .filter(n -> n.contains("."))
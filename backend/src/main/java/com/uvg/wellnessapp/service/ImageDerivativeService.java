@@ -0,0 +1,251 @@
+package com.uvg.wellnessapp.service;
+
+import com.uvg.wellnessapp.domain.ResourceFile;
+import com.uvg.wellnessapp.repository.ResourceFileRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates downscaled copies of uploaded images so previews need not fetch the original.
+ * <p>
+ * Work runs after the resource commits, on a small bounded pool: uploads never wait for it
+ * and a burst of uploads cannot take more than {@code threads} CPUs. When the queue is full
+ * the job is dropped and the original is served instead. Large images are subsampled while
+ * decoding, so a 24-megapixel photo never has to be held in memory at full size.
+ * Variants are stored through {@link FileStorageService} and recorded in {@code resource_files}.
+ */
+@Service
+public class ImageDerivativeService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageDerivativeService.class);
+
+    /** A generated size: the longest side is at most {@code maxSide} pixels. */
+    public record Variant(String name, int maxSide) {}
+
+    // Smallest first; clients get the first one at least as large as they asked for
+    public static final List<Variant> VARIANTS = List.of(
+            new Variant("thumb", 320),
+            new Variant("medium", 960));
+
+    // Formats ImageIO decodes out of the box (WebP is accepted for upload but not decodable)
+    private static final Set<String> SOURCE_EXTENSIONS = Set.of(".jpg", ".jpeg", ".png", ".gif");
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of(".jpg", ".jpeg", ".png", ".gif", ".webp");
+
+    // Refuse decompression bombs before allocating anything
+    private static final long MAX_SOURCE_PIXELS = 50_000_000L;
+
+    private static final float JPEG_QUALITY = 0.82f;
+
+    private final FileStorageService storage;
+    private final ResourceFileRepository files;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor pool;
+    private final Timer timer;
+    private final boolean enabled;
+
+    public ImageDerivativeService(
+            FileStorageService storage,
+            ResourceFileRepository files,
+            MeterRegistry meterRegistry,
+            @Value("${app.storage.derivatives.enabled:true}") boolean enabled,
+            @Value("${app.storage.derivatives.threads:2}") int threads,
+            @Value("${app.storage.derivatives.queue-capacity:200}") int queueCapacity
+    ) {
+        this.storage = storage;
+        this.files = files;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "image-derivative-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    // Below request threads: thumbnails can wait, responses cannot
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.timer = Timer.builder("storage.derivatives.duration").register(meterRegistry);
+        Gauge.builder("storage.derivatives.queue", pool, p -> p.getQueue().size()).register(meterRegistry);
+    }
+
+    @TransactionalEventListener
+    public void onResourceFileStored(ResourceFileStoredEvent event) {
+        if (!enabled || !isSupported(event.fileKey())) {
+            return;
+        }
+        try {
+            pool.execute(() -> generate(event.resourceId(), event.fileKey()));
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("storage.derivatives.rejected").increment();
+            log.warn("Derivative queue full, resource {} will be served at original size", event.resourceId());
+        }
+    }
+
+    /** True if browsers can show the file as an image, whether or not derivatives are made. */
+    public static boolean isImage(String fileKey) {
+        return IMAGE_EXTENSIONS.contains(extension(fileKey));
+    }
+
+    private static boolean isSupported(String fileKey) {
+        return SOURCE_EXTENSIONS.contains(extension(fileKey));
+    }
+
+    private static String extension(String fileKey) {
+        int dot = fileKey == null ? -1 : fileKey.lastIndexOf('.');
+        return dot < 0 ? "" : fileKey.substring(dot).toLowerCase(Locale.ROOT);
+    }
+
+    private void generate(Long resourceId, String fileKey) {
+        long start = System.nanoTime();
+        try {
+            BufferedImage image;
+            try (InputStream source = storage.open(fileKey)) {
+                image = decode(source, fileKey, VARIANTS.get(VARIANTS.size() - 1).maxSide());
+            }
+            if (image == null) {
+                return;
+            }
+            for (Variant variant : VARIANTS) {
+                // Never upscale: a small original is its own preview
+                if (Math.max(image.getWidth(), image.getHeight()) <= variant.maxSide()) {
+                    break;
+                }
+                store(resourceId, variant, scale(image, variant.maxSide()));
+            }
+        } catch (IOException | RuntimeException e) {
+            meterRegistry.counter("storage.derivatives.failed").increment();
+            log.warn("Could not generate derivatives of {} for resource {}: {}", fileKey, resourceId, e.getMessage());
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void store(Long resourceId, Variant variant, BufferedImage image) throws IOException {
+        boolean alpha = image.getColorModel().hasAlpha();
+        byte[] data = alpha ? encode(image, "png", null) : encode(image, "jpeg", JPEG_QUALITY);
+        var stored = storage.storeDerived(data, alpha ? ".png" : ".jpg");
+        try {
+            files.save(new ResourceFile(resourceId, variant.name(), stored.key(), stored.url(),
+                    alpha ? "image/png" : "image/jpeg", image.getWidth(), image.getHeight(), data.length));
+            meterRegistry.counter("storage.derivatives.generated", "variant", variant.name()).increment();
+        } catch (DataIntegrityViolationException e) {
+            // Resource deleted meanwhile, or this variant already exists
+            storage.delete(stored.key());
+            log.debug("Derivative {} of resource {} not recorded: {}", variant.name(), resourceId, e.getMessage());
+        }
+    }
+
+    /**
+     * Decodes the first frame, subsampled so it is still at least twice the target size.
+     * Returns null for images that are too large or cannot be read.
+     */
+    private static BufferedImage decode(InputStream source, String fileKey, int targetSide) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_SOURCE_PIXELS) {
+                    log.warn("Skipping derivatives of {}: {}x{} is too large", fileKey, width, height);
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / (targetSide * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Halves with bilinear filtering until within 2x, then one last step: close to area averaging, far cheaper
+    private static BufferedImage scale(BufferedImage source, int maxSide) {
+        double ratio = (double) maxSide / Math.max(source.getWidth(), source.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static byte[] encode(BufferedImage image, String format, Float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (quality != null) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
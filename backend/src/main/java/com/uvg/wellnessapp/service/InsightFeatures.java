@@ -0,0 +1,184 @@
+package com.uvg.wellnessapp.service;
+
+import com.uvg.wellnessapp.domain.AssessmentResult;
+import com.uvg.wellnessapp.domain.MoodEntry;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact aggregates of a user's recent wellness data.
+ * The dashboard prompt is built from these instead of the raw mood rows, so its size
+ * stays constant no matter how many entries a user logs per day.
+ */
+public record InsightFeatures(
+        int entries,
+        int daysLogged,
+        double average,
+        double trend,
+        int currentStreak,
+        int lowEntries,
+        List<WeekMean> weeks,
+        List<TagImpact> tags,
+        List<SleepBucket> sleep,
+        Double sleepMoodCorrelation,
+        double stdDev,
+        double meanAbsChange,
+        List<LatestAssessment> assessments
+) {
+
+    /** Mean mood of the week that ended {@code weeksAgo} weeks before today (0 = last 7 days). */
+    public record WeekMean(int weeksAgo, int count, double mean) {}
+
+    /** Mean mood of the entries carrying a tag, and its difference to the overall mean. */
+    public record TagImpact(String tag, int count, double mean, double delta) {}
+
+    public record SleepBucket(String label, int count, double meanMood) {}
+
+    /** Most recent result of an assessment type, with the change from the previous one (if any). */
+    public record LatestAssessment(String type, int total, String category, LocalDate date, Integer change) {}
+
+    private static final int MAX_WEEKS = 5;
+    private static final int MAX_TAGS = 6;
+    private static final int MIN_TAG_COUNT = 2;
+
+    /**
+     * @param moods entries of the analysed window, newest first (as returned by the repository)
+     * @param assessments all assessments of the user, newest first
+     */
+    public static InsightFeatures extract(List<MoodEntry> moods, List<AssessmentResult> assessments,
+                                          MoodService.MoodStats stats, LocalDate today) {
+        int n = moods.size();
+        double sum = 0;
+        int lowEntries = 0;
+        double[] weekSum = new double[MAX_WEEKS];
+        int[] weekCount = new int[MAX_WEEKS];
+        Map<String, double[]> tagAcc = new HashMap<>(); // tag -> {sum, count}
+        double[][] sleepAcc = new double[3][2];          // <6h, 6-8h, >8h -> {sum, count}
+        double sx = 0, sy = 0, sxx = 0, syy = 0, sxy = 0;
+        int sleepPairs = 0;
+        LocalDate lastDay = null;
+        int daysLogged = 0;
+
+        for (MoodEntry m : moods) {
+            int score = m.getMoodScore();
+            sum += score;
+            if (score <= 2) lowEntries++;
+
+            LocalDate day = m.getCreatedAt().toLocalDate();
+            if (!day.equals(lastDay)) {
+                daysLogged++;
+                lastDay = day;
+            }
+
+            int week = (int) (ChronoUnit.DAYS.between(day, today) / 7);
+            if (week >= 0 && week < MAX_WEEKS) {
+                weekSum[week] += score;
+                weekCount[week]++;
+            }
+
+            String tags = m.getTags();
+            if (tags != null && !tags.isBlank()) {
+                for (String raw : tags.split(",")) {
+                    String tag = raw.trim().toLowerCase(Locale.ROOT);
+                    if (tag.isEmpty()) continue;
+                    double[] acc = tagAcc.computeIfAbsent(tag, k -> new double[2]);
+                    acc[0] += score;
+                    acc[1]++;
+                }
+            }
+
+            Double hours = m.getSleepHours();
+            if (hours != null) {
+                int bucket = hours < 6 ? 0 : hours <= 8 ? 1 : 2;
+                sleepAcc[bucket][0] += score;
+                sleepAcc[bucket][1]++;
+                sx += hours; sy += score; sxx += hours * hours; syy += (double) score * score; sxy += hours * score;
+                sleepPairs++;
+            }
+        }
+
+        double average = n == 0 ? 0 : sum / n;
+
+        List<WeekMean> weeks = new ArrayList<>(MAX_WEEKS);
+        for (int w = 0; w < MAX_WEEKS; w++) {
+            if (weekCount[w] > 0) {
+                weeks.add(new WeekMean(w, weekCount[w], weekSum[w] / weekCount[w]));
+            }
+        }
+
+        List<TagImpact> tagImpacts = new ArrayList<>();
+        for (Map.Entry<String, double[]> e : tagAcc.entrySet()) {
+            int count = (int) e.getValue()[1];
+            if (count < MIN_TAG_COUNT) continue;
+            double mean = e.getValue()[0] / count;
+            tagImpacts.add(new TagImpact(e.getKey(), count, mean, mean - average));
+        }
+        tagImpacts.sort(Comparator.comparingDouble((TagImpact t) -> -Math.abs(t.delta()))
+                .thenComparing(TagImpact::tag));
+        if (tagImpacts.size() > MAX_TAGS) {
+            tagImpacts = tagImpacts.subList(0, MAX_TAGS);
+        }
+
+        String[] labels = {"<6h", "6-8h", ">8h"};
+        List<SleepBucket> sleep = new ArrayList<>(3);
+        for (int b = 0; b < 3; b++) {
+            if (sleepAcc[b][1] > 0) {
+                sleep.add(new SleepBucket(labels[b], (int) sleepAcc[b][1], sleepAcc[b][0] / sleepAcc[b][1]));
+            }
+        }
+
+        Double correlation = null;
+        if (sleepPairs >= 3) {
+            double cov = sxy - sx * sy / sleepPairs;
+            double vx = sxx - sx * sx / sleepPairs;
+            double vy = syy - sy * sy / sleepPairs;
+            if (vx > 0 && vy > 0) {
+                correlation = cov / Math.sqrt(vx * vy);
+            }
+        }
+
+        // Volatility: dispersion around the mean and average change between consecutive entries
+        double variance = 0;
+        double absChange = 0;
+        for (int i = 0; i < n; i++) {
+            double d = moods.get(i).getMoodScore() - average;
+            variance += d * d;
+            if (i > 0) {
+                absChange += Math.abs(moods.get(i).getMoodScore() - moods.get(i - 1).getMoodScore());
+            }
+        }
+        double stdDev = n > 1 ? Math.sqrt(variance / (n - 1)) : 0;
+        double meanAbsChange = n > 1 ? absChange / (n - 1) : 0;
+
+        return new InsightFeatures(n, daysLogged, average, stats.trend(), stats.currentStreak(), lowEntries,
+                weeks, tagImpacts, sleep, correlation, stdDev, meanAbsChange, latestAssessments(assessments));
+    }
+
+    private static List<LatestAssessment> latestAssessments(List<AssessmentResult> assessments) {
+        Map<String, LatestAssessment> latest = new LinkedHashMap<>();
+        Set<String> complete = new HashSet<>();
+        for (AssessmentResult a : assessments) {
+            String type = a.getAssessmentType().toUpperCase(Locale.ROOT);
+            LatestAssessment current = latest.get(type);
+            if (current == null) {
+                latest.put(type, new LatestAssessment(type, a.getTotal(), a.getCategory(),
+                        a.getCreatedAt().toLocalDate(), null));
+            } else if (complete.add(type)) {
+                // Second (previous) result of this type: record the change and stop looking
+                latest.put(type, new LatestAssessment(type, current.total(), current.category(), current.date(),
+                        current.total() - a.getTotal()));
+            }
+        }
+        return new ArrayList<>(latest.values());
+    }
+}
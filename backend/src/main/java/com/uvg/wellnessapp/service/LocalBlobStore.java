@@ -0,0 +1,113 @@
+package com.uvg.wellnessapp.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/** Blobs as files in {@code app.storage.uploadDir}, served with sendfile by {@link com.uvg.wellnessapp.web.FileController}. */
+@Component
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "local", matchIfMissing = true)
+public class LocalBlobStore implements BlobStore {
+
+    static final String COPY_PREFIX = ".copy-";
+
+    private final Path root;
+
+    public LocalBlobStore(@Value("${app.storage.uploadDir}") String uploadDir) throws IOException {
+        this.root = Path.of(uploadDir).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+    }
+
+    @Override
+    public void put(String key, Path file) throws IOException {
+        Path temp = Files.createTempFile(root, COPY_PREFIX, ".tmp");
+        try {
+            Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING);
+            moveIn(key, temp);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Same disk as scratchDir(), so this is a rename and readers never see a partial file
+    @Override
+    public void moveIn(String key, Path file) throws IOException {
+        move(file, resolve(key));
+    }
+
+    @Override
+    public Optional<BlobInfo> stat(String key) throws IOException {
+        Path path = resolve(key);
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        return Optional.of(new BlobInfo(Files.size(path), Files.getLastModifiedTime(path).toMillis()));
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public void rename(String from, String to) throws IOException {
+        move(resolve(from), resolve(to));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public Stream<String> keys() throws IOException {
+        return Files.list(root)
+                .filter(Files::isRegularFile)
+                .map(p -> p.getFileName().toString())
+                .filter(name -> !name.startsWith("."));
+    }
+
+    @Override
+    public Stream<String> keys(String prefix) throws IOException {
+        return Files.list(root)
+                .filter(Files::isRegularFile)
+                .map(p -> p.getFileName().toString())
+                .filter(name -> name.startsWith(prefix));
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        Path path = resolve(key);
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    @Override
+    public Path scratchDir() {
+        return root;
+    }
+
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.getParent().equals(root)) {
+            throw new IllegalArgumentException("Invalid file key: " + key);
+        }
+        return path;
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.uvg.wellnessapp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Deterministic, in-process insight generator.
+ * Produces the same JSON schema as the model ({@code patrones}, {@code correlacionSueno},
+ * {@code analisisTags}, {@code recomendaciones}, {@code riesgo}) from {@link InsightFeatures}
+ * and fixed rule tables, in microseconds. Used when the model is not configured or fails,
+ * as an instant first paint while the model answer streams, and for users over budget.
+ */
+@Component
+public class LocalInsightEngine {
+
+    private static final String DISCLAIMER = "Este análisis es orientativo, se generó automáticamente a partir de tus registros y no constituye consejo médico. Consulta siempre con un profesional de salud mental.";
+
+    private static final int RECOMMENDATIONS = 3;
+
+    private record Rule(Predicate<InsightFeatures> when, String text) {}
+
+    private record Risk(String nivel, String mensaje) {}
+
+    // Ordered by priority: the first matching rules fill the recommendations
+    private static final List<Rule> RECOMMENDATION_RULES = List.of(
+            new Rule(f -> isAtLeast(f, "PHQ9", 15) || isAtLeast(f, "GAD7", 15),
+                    "Tus evaluaciones recientes muestran puntajes elevados: busca apoyo de un profesional de salud mental lo antes posible."),
+            new Rule(f -> isAtLeast(f, "PHQ9", 10) || isAtLeast(f, "GAD7", 10),
+                    "Considera agendar una conversación con un profesional para revisar tus resultados de evaluación."),
+            new Rule(f -> sleepMean(f, "<6h") != null && sleepMean(f, "6-8h") != null
+                            && sleepMean(f, "6-8h") - sleepMean(f, "<6h") >= 0.5,
+                    "Tus días con menos de 6 horas de sueño son más bajos: intenta fijar una hora regular para acostarte."),
+            new Rule(f -> f.trend() < -0.3,
+                    "Tu ánimo ha bajado en los últimos días: reserva un momento diario para una actividad que disfrutes."),
+            new Rule(f -> f.stdDev() > 1.2,
+                    "Tu ánimo varía bastante de un registro a otro: anotar qué pasó en los días difíciles puede ayudarte a detectar detonantes."),
+            new Rule(f -> bestTag(f) != null,
+                    null), // text built from the tag, see recommendations()
+            new Rule(f -> f.sleep().isEmpty(),
+                    "Registra tus horas de sueño junto con tu ánimo para descubrir cómo se relacionan."),
+            new Rule(f -> f.currentStreak() < 3,
+                    "Registrar tu ánimo todos los días ayuda a obtener perspectivas más precisas."),
+            new Rule(f -> true,
+                    "Prueba unos minutos de respiración guiada o una caminata corta cuando notes tensión."),
+            new Rule(f -> true,
+                    "Mantén el contacto con personas de confianza; compartir cómo te sientes ayuda."),
+            new Rule(f -> true,
+                    "Sigue registrando tu ánimo para observar tu progreso con el tiempo.")
+    );
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public String generate(InsightFeatures f) {
+        Map<String, Object> insight = new LinkedHashMap<>();
+        insight.put("patrones", patterns(f));
+        insight.put("correlacionSueno", sleep(f));
+        insight.put("analisisTags", tags(f));
+        insight.put("recomendaciones", recommendations(f));
+        insight.put("riesgo", risk(f));
+        insight.put("disclaimer", DISCLAIMER);
+        insight.put("fuente", "local");
+        try {
+            return objectMapper.writeValueAsString(insight);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize local insight", e);
+        }
+    }
+
+    private static String patterns(InsightFeatures f) {
+        StringBuilder sb = new StringBuilder(256);
+        String level = f.average() >= 4 ? "mayormente positivo" : f.average() >= 3 ? "moderado" : "bajo";
+        sb.append("En los últimos 30 días registraste ").append(f.entries())
+          .append(f.entries() == 1 ? " entrada" : " entradas").append(" con un ánimo promedio ").append(level)
+          .append(" (").append(oneDecimal(f.average())).append(" de 5). ");
+
+        if (f.trend() > 0.1) {
+            sb.append("Tu ánimo muestra una tendencia a mejorar");
+        } else if (f.trend() < -0.1) {
+            sb.append("Tu ánimo muestra una tendencia a la baja");
+        } else {
+            sb.append("Tu ánimo se ha mantenido estable");
+        }
+        sb.append(f.stdDev() > 1.2 ? ", aunque con variaciones marcadas entre registros. " : ". ");
+
+        if (f.weeks().size() >= 2 && f.weeks().get(0).weeksAgo() == 0 && f.weeks().get(1).weeksAgo() == 1) {
+            double diff = f.weeks().get(0).mean() - f.weeks().get(1).mean();
+            if (diff >= 0.3) {
+                sb.append("Esta semana fue mejor que la anterior.");
+            } else if (diff <= -0.3) {
+                sb.append("Esta semana fue más difícil que la anterior.");
+            } else {
+                sb.append("Esta semana fue similar a la anterior.");
+            }
+        } else if (f.currentStreak() > 1) {
+            sb.append("Llevas una racha de ").append(f.currentStreak()).append(" días registrando tu ánimo.");
+        }
+        return sb.toString().trim();
+    }
+
+    private static String sleep(InsightFeatures f) {
+        if (f.sleep().isEmpty()) {
+            return "Aún no hay suficientes registros de sueño para analizar su relación con tu ánimo.";
+        }
+        Double r = f.sleepMoodCorrelation();
+        if (r == null || Math.abs(r) < 0.2) {
+            return "Por ahora no se observa una relación clara entre tus horas de sueño y tu ánimo.";
+        }
+        Double short_ = sleepMean(f, "<6h");
+        Double normal = sleepMean(f, "6-8h");
+        String detail = short_ != null && normal != null
+                ? " (ánimo promedio " + oneDecimal(short_) + " con menos de 6 horas frente a " + oneDecimal(normal) + " con 6 a 8 horas)"
+                : "";
+        return r > 0
+                ? "Tus días con más horas de sueño suelen coincidir con un mejor ánimo" + detail + "."
+                : "Dormir más no parece mejorar tu ánimo por ahora; la calidad del descanso podría influir más que las horas" + detail + ".";
+    }
+
+    private static String tags(InsightFeatures f) {
+        if (f.tags().isEmpty()) {
+            return "Agrega etiquetas a tus registros para descubrir qué actividades influyen en tu ánimo.";
+        }
+        InsightFeatures.TagImpact best = bestTag(f);
+        InsightFeatures.TagImpact worst = worstTag(f);
+        if (best == null && worst == null) {
+            return "Tus actividades registradas no muestran diferencias marcadas en tu ánimo.";
+        }
+        StringBuilder sb = new StringBuilder(192);
+        if (best != null) {
+            sb.append("Los registros con \"").append(best.tag()).append("\" tienen un ánimo más alto que tu promedio (")
+              .append(oneDecimal(best.mean())).append(" de 5).");
+        }
+        if (worst != null) {
+            if (!sb.isEmpty()) sb.append(' ');
+            sb.append("Los registros con \"").append(worst.tag()).append("\" suelen ser más bajos (")
+              .append(oneDecimal(worst.mean())).append(" de 5).");
+        }
+        return sb.toString();
+    }
+
+    private static List<String> recommendations(InsightFeatures f) {
+        List<String> out = new ArrayList<>(RECOMMENDATIONS);
+        for (Rule rule : RECOMMENDATION_RULES) {
+            if (out.size() == RECOMMENDATIONS) break;
+            if (!rule.when().test(f)) continue;
+            String text = rule.text() != null ? rule.text()
+                    : "Dedica más tiempo a \"" + bestTag(f).tag() + "\", una actividad que coincide con tus mejores días.";
+            out.add(text);
+        }
+        return out;
+    }
+
+    private static Risk risk(InsightFeatures f) {
+        double lowShare = f.entries() == 0 ? 0 : (double) f.lowEntries() / f.entries();
+        if (isAtLeast(f, "PHQ9", 15) || isAtLeast(f, "GAD7", 15)) {
+            return new Risk("alto",
+                    "Tus resultados recientes indican que podrías estar pasando por un momento difícil. No estás solo: hablar con un profesional puede ayudarte.");
+        }
+        if (isAtLeast(f, "PHQ9", 10) || isAtLeast(f, "GAD7", 10) || f.average() < 2.5 || lowShare > 0.4) {
+            return new Risk("medio",
+                    "Hemos notado varios días con ánimo bajo. Cuídate y considera buscar apoyo si esta situación continúa.");
+        }
+        return new Risk("bajo",
+                "Tus registros no muestran señales de alerta. Sigue cuidando de tu bienestar.");
+    }
+
+    private static boolean isAtLeast(InsightFeatures f, String type, int threshold) {
+        for (InsightFeatures.LatestAssessment a : f.assessments()) {
+            if (a.type().equals(type) && a.total() >= threshold) return true;
+        }
+        return false;
+    }
+
+    private static Double sleepMean(InsightFeatures f, String label) {
+        for (InsightFeatures.SleepBucket b : f.sleep()) {
+            if (b.label().equals(label)) return b.meanMood();
+        }
+        return null;
+    }
+
+    private static InsightFeatures.TagImpact bestTag(InsightFeatures f) {
+        InsightFeatures.TagImpact best = null;
+        for (InsightFeatures.TagImpact t : f.tags()) {
+            if (t.delta() >= 0.2 && (best == null || t.delta() > best.delta())) best = t;
+        }
+        return best;
+    }
+
+    private static InsightFeatures.TagImpact worstTag(InsightFeatures f) {
+        InsightFeatures.TagImpact worst = null;
+        for (InsightFeatures.TagImpact t : f.tags()) {
+            if (t.delta() <= -0.2 && (worst == null || t.delta() < worst.delta())) worst = t;
+        }
+        return worst;
+    }
+
+    private static String oneDecimal(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+}
@@ -4,6 +4,7 @@ import com.uvg.wellnessapp.domain.PasswordResetToken;
 import com.uvg.wellnessapp.domain.User;
 import com.uvg.wellnessapp.repository.PasswordResetTokenRepository;
 import com.uvg.wellnessapp.repository.UserRepository;
+import com.uvg.wellnessapp.security.TokenRevocationList;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -21,15 +22,21 @@ public class PasswordResetService {
     private final UserRepository userRepository;
     private final EmailService emailService;
     private final PasswordEncoder passwordEncoder;
+    private final RefreshTokenService refreshTokenService;
+    private final TokenRevocationList tokenRevocations;
 
     public PasswordResetService(PasswordResetTokenRepository tokenRepository,
                                 UserRepository userRepository,
                                 EmailService emailService,
-                                PasswordEncoder passwordEncoder) {
+                                PasswordEncoder passwordEncoder,
+                                RefreshTokenService refreshTokenService,
+                                TokenRevocationList tokenRevocations) {
         this.tokenRepository = tokenRepository;
         this.userRepository = userRepository;
         this.emailService = emailService;
         this.passwordEncoder = passwordEncoder;
+        this.refreshTokenService = refreshTokenService;
+        this.tokenRevocations = tokenRevocations;
     }
 
     @Transactional
@@ -94,11 +101,10 @@ public class PasswordResetService {
         // Invalidate all other tokens for this user
         tokenRepository.invalidateAllTokensForUser(user.getId());
 
-        return true;
-    }
+        // Sessions opened with the old password must not be used or renewed
+        refreshTokenService.revokeAllForUser(user.getId());
+        tokenRevocations.revokeAllForUser(user.getId());
 
-    @Transactional
-    public void cleanupExpiredTokens() {
-        tokenRepository.deleteExpiredTokens(LocalDateTime.now());
+        return true;
     }
 }
@@ -0,0 +1,150 @@
+package com.uvg.wellnessapp.service;
+
+import com.uvg.wellnessapp.domain.RefreshToken;
+import com.uvg.wellnessapp.domain.User;
+import com.uvg.wellnessapp.repository.RefreshTokenRepository;
+import com.uvg.wellnessapp.security.TokenHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Long-lived, single-use refresh tokens so clients can renew a short access token
+ * without sending the password (and paying for BCrypt) again.
+ * <p>
+ * Each refresh consumes the presented token and issues a new one in the same family.
+ * The successor is an HMAC of the presented token, so it can be handed out again without
+ * being stored: a token consumed less than {@code refresh-reuse-grace-seconds} ago (a second
+ * tab, a retry after a lost response) gets the same successor. Presenting a consumed token
+ * after that means it was copied, so the whole family is revoked and the user has to sign
+ * in again. Logged-out tokens are {@code revoked}, not consumed, and are simply refused.
+ */
+@Service
+public class RefreshTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private static final int TOKEN_BYTES = 32;
+    private static final String SUCCESSOR_ALGORITHM = "HmacSHA256";
+
+    private final RefreshTokenRepository tokenRepository;
+    private final SecureRandom random = new SecureRandom();
+    private final int refreshDays;
+    private final Duration reuseGrace;
+    private final SecretKeySpec successorKey;
+
+    public record Rotation(User user, String refreshToken) {}
+
+    public RefreshTokenService(RefreshTokenRepository tokenRepository,
+                               @Value("${app.security.jwt.refresh-days:30}") int refreshDays,
+                               @Value("${app.security.jwt.refresh-reuse-grace-seconds:30}") long reuseGraceSeconds,
+                               @Value("${app.security.jwt.secret}") String secret) {
+        this.tokenRepository = tokenRepository;
+        this.refreshDays = refreshDays;
+        this.reuseGrace = Duration.ofSeconds(reuseGraceSeconds);
+        this.successorKey = new SecretKeySpec(("refresh-token-successor:" + secret).getBytes(StandardCharsets.UTF_8),
+                SUCCESSOR_ALGORITHM);
+    }
+
+    /** Starts a new token family, e.g. after a password or Google login. */
+    @Transactional
+    public String issue(Long userId) {
+        return issue(userId, UUID.randomUUID());
+    }
+
+    /**
+     * Consumes {@code rawToken} and returns its user with the next token of the family.
+     * Empty when the token is unknown, expired, revoked or was consumed outside the grace window.
+     */
+    @Transactional
+    public Optional<Rotation> rotate(String rawToken) {
+        if (rawToken == null || rawToken.isBlank()) {
+            return Optional.empty();
+        }
+        Optional<RefreshToken> tokenOpt = tokenRepository.findWithUserByTokenHash(TokenHash.sha256Hex(rawToken));
+        if (tokenOpt.isEmpty()) {
+            return Optional.empty();
+        }
+
+        RefreshToken current = tokenOpt.get();
+        if (current.getRevoked() || current.isExpired()) {
+            return Optional.empty();
+        }
+        String next = successorOf(rawToken);
+        // Conditional update, so two concurrent refreshes cannot both issue a successor
+        if (!current.getUsed() && tokenRepository.markUsed(current.getId(), LocalDateTime.now()) == 1) {
+            issue(current.getUserId(), current.getFamilyId(), next);
+            return Optional.of(new Rotation(current.getUser(), next));
+        }
+
+        // Consumed already. Just now (a concurrent refresh, used_at not loaded yet) or within the
+        // grace window: hand out the successor that was issued, as long as the family is still live
+        LocalDateTime usedAt = current.getUsedAt();
+        boolean recent = usedAt == null || usedAt.isAfter(LocalDateTime.now().minus(reuseGrace));
+        if (recent) {
+            Optional<RefreshToken> successor = tokenRepository.findByTokenHash(TokenHash.sha256Hex(next));
+            if (successor.isPresent() && !successor.get().getRevoked()) {
+                log.debug("Refresh token of user {} presented again within the grace window", current.getUserId());
+                return Optional.of(new Rotation(current.getUser(), next));
+            }
+        }
+
+        int revoked = tokenRepository.revokeFamily(current.getFamilyId());
+        log.warn("Refresh token reuse for user {}: revoked {} tokens of the family", current.getUserId(), revoked);
+        return Optional.empty();
+    }
+
+    /** Logout: the presented token and every token rotated from the same login stop working. */
+    @Transactional
+    public void revoke(String rawToken) {
+        if (rawToken == null || rawToken.isBlank()) {
+            return;
+        }
+        tokenRepository.findByTokenHash(TokenHash.sha256Hex(rawToken))
+                .ifPresent(t -> tokenRepository.revokeFamily(t.getFamilyId()));
+    }
+
+    /** Signs the user out everywhere, e.g. after a password change. */
+    @Transactional
+    public void revokeAllForUser(Long userId) {
+        tokenRepository.revokeAllForUser(userId);
+    }
+
+    private String issue(Long userId, UUID familyId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String raw = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        issue(userId, familyId, raw);
+        return raw;
+    }
+
+    private void issue(Long userId, UUID familyId, String raw) {
+        LocalDateTime expiresAt = LocalDateTime.now().plusDays(refreshDays);
+        tokenRepository.save(new RefreshToken(userId, TokenHash.sha256Hex(raw), familyId, expiresAt));
+    }
+
+    // Only the server can derive it, and only from the raw token, which is never stored
+    private String successorOf(String rawToken) {
+        try {
+            Mac mac = Mac.getInstance(SUCCESSOR_ALGORITHM);
+            mac.init(successorKey);
+            byte[] bytes = mac.doFinal(rawToken.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.uvg.wellnessapp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pages of the public resource catalog ({@code GET /api/v1/resources/public}), newest first.
+ * <p>
+ * Pages are read with keyset paging on {@code (created_at, id)}, so page 100 costs the same
+ * index range scan as page 1, and only the public columns are selected. Each page is
+ * serialized once and kept as bytes with its ETag; repeated requests do no SQL and no Jackson
+ * work. Creating or deleting a resource drops every cached page once its transaction commits.
+ * Other nodes' changes show up when their pages expire after {@code ttl-seconds}. Page sizes are
+ * rounded up to one of {@link #PAGE_SIZES}, and at most {@code max-pages} pages are kept: a miss on
+ * a full cache drops the expired pages (at most once a second), then arbitrary loaded ones.
+ * <p>
+ * Only pages a client can reach by following the catalog are cached: all or one of
+ * {@link ResourceCategories#ALL}, starting from the first page or a cursor a cached page handed
+ * out. Any other category or cursor is read from the database every time, so made-up keys cannot
+ * fill the cache or push out the pages everyone else is reading.
+ */
+@Service
+public class ResourceCatalog {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 100;
+    // Few distinct limits, so the same page is not cached once per limit a client made up
+    public static final int[] PAGE_SIZES = {10, 20, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE};
+
+    private static final long SWEEP_INTERVAL_MS = 1000;
+
+    // Conditions are added only when used, so each shape gets its own plan on the partial indexes
+    private static final String PAGE_SQL = """
+            SELECT id, title, description, category, file_url, created_at FROM resources
+            WHERE status = 'APPROVED'%s%s
+            ORDER BY created_at DESC, id DESC
+            LIMIT :limit""";
+
+    private static final RowMapper<ResourceSummary> ROW_MAPPER = (rs, n) -> new ResourceSummary(
+            rs.getLong("id"),
+            rs.getString("title"),
+            rs.getString("description"),
+            rs.getString("category"),
+            rs.getString("file_url"),
+            rs.getTimestamp("created_at").toLocalDateTime());
+
+    /** A serialized page; {@code nextCursor} is null on the last page. */
+    public record Page(byte[] body, String etag, String nextCursor, long loadedAt) {}
+
+    private record PageKey(String category, String cursor, int limit) {}
+
+    private record Cursor(LocalDateTime createdAt, long id) {}
+
+    /** The cached pages and the cursors they handed out, dropped together on invalidation. */
+    private record Generation(ConcurrentHashMap<PageKey, CompletableFuture<Page>> pages, Set<String> cursors) {
+        Generation() {
+            this(new ConcurrentHashMap<>(), ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final long ttlMillis;
+    private final int maxPages;
+    private final AtomicLong nextSweepAt = new AtomicLong();
+
+    // Replaced wholesale on invalidation; a load still running fills the old generation, which is dropped
+    private volatile Generation generation = new Generation();
+
+    public ResourceCatalog(
+            NamedParameterJdbcTemplate jdbc,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.resources.catalog.ttl-seconds:30}") long ttlSeconds,
+            @Value("${app.resources.catalog.max-pages:1000}") int maxPages
+    ) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxPages = Math.max(1, maxPages);
+        Gauge.builder("resources.catalog.pages", this, c -> c.generation.pages().size()).register(meterRegistry);
+    }
+
+    /**
+     * Returns one page of approved resources.
+     *
+     * @param category category to filter by (any spelling of one of {@link ResourceCategories#ALL}
+     *                 matches it), or null for all
+     * @param cursor   {@link Page#nextCursor()} of the previous page, or null for the first
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public Page page(String category, String cursor, int limit) {
+        Cursor after = cursor == null ? null : decodeCursor(cursor);
+        Optional<String> known = category == null ? Optional.empty() : ResourceCategories.canonical(category);
+        PageKey key = new PageKey(known.orElse(category), cursor, pageSize(limit));
+
+        Generation gen = generation;
+        if ((category != null && known.isEmpty()) || (cursor != null && !gen.cursors().contains(cursor))) {
+            meterRegistry.counter("resources.catalog.requests", "result", "uncached").increment();
+            return load(key, after);
+        }
+
+        ConcurrentHashMap<PageKey, CompletableFuture<Page>> current = gen.pages();
+        CompletableFuture<Page> cached = current.get(key);
+        if (cached != null && isStale(cached, System.currentTimeMillis())) {
+            current.remove(key, cached);
+            cached = null;
+        }
+
+        // One load per page at a time: concurrent misses wait for it instead of querying too
+        CompletableFuture<Page> mine = new CompletableFuture<>();
+        if (cached == null) {
+            if (current.size() >= maxPages) {
+                makeRoom(current);
+            }
+            cached = current.putIfAbsent(key, mine);
+        }
+        if (cached != null) {
+            meterRegistry.counter("resources.catalog.requests", "result", "hit").increment();
+            return join(cached);
+        }
+
+        meterRegistry.counter("resources.catalog.requests", "result", "miss").increment();
+        try {
+            Page page = load(key, after);
+            if (page.nextCursor() != null) {
+                gen.cursors().add(page.nextCursor());
+            }
+            mine.complete(page);
+            return page;
+        } catch (RuntimeException e) {
+            current.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /** Drops every cached page once the current transaction commits (immediately outside one). */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    generation = new Generation();
+                }
+            });
+        } else {
+            generation = new Generation();
+        }
+    }
+
+    /** The smallest of {@link #PAGE_SIZES} that holds {@code limit} rows. */
+    private static int pageSize(int limit) {
+        for (int size : PAGE_SIZES) {
+            if (limit <= size) {
+                return size;
+            }
+        }
+        return MAX_PAGE_SIZE;
+    }
+
+    private boolean isStale(CompletableFuture<Page> page, long now) {
+        return page.isDone() && (page.isCompletedExceptionally() || now - page.join().loadedAt() >= ttlMillis);
+    }
+
+    private void makeRoom(ConcurrentHashMap<PageKey, CompletableFuture<Page>> current) {
+        long now = System.currentTimeMillis();
+        long due = nextSweepAt.get();
+        if (now >= due && nextSweepAt.compareAndSet(due, now + SWEEP_INTERVAL_MS)) {
+            current.values().removeIf(page -> isStale(page, now));
+        }
+        // Still full of live pages: drop loaded ones (loads in progress keep coalescing their waiters)
+        for (var it = current.values().iterator(); current.size() >= maxPages && it.hasNext(); ) {
+            if (it.next().isDone()) {
+                it.remove();
+            }
+        }
+    }
+
+    private Page load(PageKey key, Cursor after) {
+        // One extra row tells whether there is a next page
+        String sql = PAGE_SQL.formatted(
+                key.category() == null ? "" : " AND category = :category",
+                after == null ? "" : " AND (created_at, id) < (:afterCreatedAt, :afterId)");
+        MapSqlParameterSource params = new MapSqlParameterSource("limit", key.limit() + 1)
+                .addValue("category", key.category());
+        if (after != null) {
+            params.addValue("afterCreatedAt", after.createdAt()).addValue("afterId", after.id());
+        }
+        List<ResourceSummary> rows = jdbc.query(sql, params, ROW_MAPPER);
+
+        String nextCursor = null;
+        if (rows.size() > key.limit()) {
+            rows = rows.subList(0, key.limit());
+            ResourceSummary last = rows.get(rows.size() - 1);
+            nextCursor = encodeCursor(new Cursor(last.createdAt(), last.id()));
+        }
+
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(rows);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize resource page", e);
+        }
+        return new Page(body, etag(body), nextCursor, System.currentTimeMillis());
+    }
+
+    private static Page join(CompletableFuture<Page> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Opaque to clients: base64url of "<created_at>|<id>"
+    private static String encodeCursor(Cursor cursor) {
+        String raw = cursor.createdAt() + "|" + cursor.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf('|');
+            return new Cursor(LocalDateTime.parse(raw.substring(0, Math.max(sep, 0))),
+                    Long.parseLong(raw.substring(sep + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // Bad base64 and bad ids are IllegalArgumentExceptions (NumberFormatException)
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private static String etag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.uvg.wellnessapp.service;
+
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The categories a resource can have: the same list the upload form and the catalog filter offer.
+ * Resources are stored with the canonical spelling, so filters can be exact matches on the
+ * category index; input is matched ignoring case and accents ("depresion" is "Depresión").
+ */
+public final class ResourceCategories {
+
+    public static final List<String> ALL = List.of("Ansiedad", "Depresión", "Sueño", "Estrés", "Guías");
+
+    private static final Map<String, String> BY_KEY = ALL.stream()
+            .collect(Collectors.toUnmodifiableMap(ResourceCategories::key, Function.identity()));
+
+    private ResourceCategories() {
+    }
+
+    /** The canonical spelling of {@code category}, or empty if it is not one of {@link #ALL}. */
+    public static Optional<String> canonical(String category) {
+        return category == null ? Optional.empty() : Optional.ofNullable(BY_KEY.get(key(category)));
+    }
+
+    private static String key(String category) {
+        return Normalizer.normalize(category.trim(), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT);
+    }
+}
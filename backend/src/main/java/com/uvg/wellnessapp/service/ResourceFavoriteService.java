@@ -0,0 +1,202 @@
+package com.uvg.wellnessapp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Favorites of resources, their per-resource counts and the "popular this week" ranking.
+ * <p>
+ * Favoriting is idempotent: the insert is {@code ON CONFLICT DO NOTHING} and the counters in
+ * {@code resource_stats} move only when a row was actually added or removed, in the same
+ * transaction, with a single upsert that the row lock makes atomic. The popularity score is
+ * an exponentially decayed count with a configurable half-life, kept incrementally: every
+ * update decays the stored score to now before adding or removing one favorite (a removed
+ * favorite takes back exactly what it still contributes). The ranking is read from
+ * {@code resource_stats} on a schedule and kept as serialized bytes, so requests neither
+ * aggregate {@code resource_favorites} nor touch the database.
+ */
+@Service
+public class ResourceFavoriteService {
+
+    private static final Logger log = LoggerFactory.getLogger(ResourceFavoriteService.class);
+
+    private static final String INSERT_SQL = """
+            INSERT INTO resource_favorites (user_id, resource_id)
+            SELECT :userId, id FROM resources WHERE id = :resourceId AND status = 'APPROVED'
+            ON CONFLICT (user_id, resource_id) DO NOTHING""";
+
+    // Age in seconds of the removed favorite, to take back its decayed weight
+    private static final String DELETE_SQL = """
+            DELETE FROM resource_favorites WHERE user_id = :userId AND resource_id = :resourceId
+            RETURNING GREATEST(extract(epoch FROM LOCALTIMESTAMP - created_at), 0) AS age_seconds""";
+
+    private static final String BUMP_SQL = """
+            INSERT INTO resource_stats AS s (resource_id, favorite_count, popularity_score, popularity_updated_at)
+            VALUES (:resourceId, GREATEST(:delta, 0), GREATEST(:weight, 0), now())
+            ON CONFLICT (resource_id) DO UPDATE SET
+                favorite_count = GREATEST(s.favorite_count + :delta, 0),
+                popularity_score = GREATEST(s.popularity_score
+                    * exp(-extract(epoch FROM now() - s.popularity_updated_at) / CAST(:tau AS DOUBLE PRECISION))
+                    + :weight, 0),
+                popularity_updated_at = now()
+            RETURNING favorite_count""";
+
+    private static final String COUNT_SQL = """
+            SELECT coalesce(s.favorite_count, 0) FROM resources r
+            LEFT JOIN resource_stats s ON s.resource_id = r.id
+            WHERE r.id = :resourceId AND r.status = 'APPROVED'""";
+
+    private static final String USER_FAVORITES_SQL = """
+            SELECT f.resource_id FROM resource_favorites f
+            JOIN resources r ON r.id = f.resource_id AND r.status = 'APPROVED'
+            WHERE f.user_id = :userId
+            ORDER BY f.created_at DESC""";
+
+    // Scores are decayed to the same instant, so they compare; only resource_stats is scanned
+    private static final String POPULAR_SQL = """
+            SELECT r.id, r.title, r.description, r.category, r.file_url, r.created_at, s.favorite_count,
+                   s.popularity_score * exp(-extract(epoch FROM now() - s.popularity_updated_at)
+                       / CAST(:tau AS DOUBLE PRECISION)) AS score
+            FROM resource_stats s
+            JOIN resources r ON r.id = s.resource_id AND r.status = 'APPROVED'
+            WHERE s.popularity_score > 0
+            ORDER BY score DESC, r.id DESC
+            LIMIT :limit""";
+
+    // Below this a resource has had no favorites for many half-lives
+    private static final double MIN_SCORE = 0.01;
+
+    /** Favorite state of a resource for the user who changed it. */
+    public record FavoriteState(boolean favorited, int favoriteCount) {}
+
+    public record PopularResource(Long id, String title, String description, String category, String fileUrl,
+                                  LocalDateTime createdAt, int favoriteCount, double score) {}
+
+    /** The ranking as served: JSON bytes and their ETag. */
+    public record PopularSnapshot(byte[] body, String etag) {}
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final double tauSeconds;
+    private final int popularSize;
+
+    private volatile PopularSnapshot popular;
+
+    public ResourceFavoriteService(
+            NamedParameterJdbcTemplate jdbc,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.resources.popular.half-life-hours:72}") double halfLifeHours,
+            @Value("${app.resources.popular.size:20}") int popularSize
+    ) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        // exp(-t / tau) halves every half-life
+        this.tauSeconds = halfLifeHours * 3600 / Math.log(2);
+        this.popularSize = popularSize;
+        this.popular = serialize(List.of());
+    }
+
+    /** Marks the resource as a favorite of the user; empty if there is no such approved resource. */
+    @Transactional
+    public Optional<FavoriteState> favorite(Long userId, Long resourceId) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("resourceId", resourceId);
+        if (jdbc.update(INSERT_SQL, params) == 0) {
+            // Already a favorite, or no such resource
+            return currentCount(resourceId).map(count -> new FavoriteState(true, count));
+        }
+        meterRegistry.counter("resources.favorites", "action", "add").increment();
+        return Optional.of(new FavoriteState(true, bump(resourceId, 1, 1.0)));
+    }
+
+    /** Removes the resource from the user's favorites; empty if there is no such approved resource. */
+    @Transactional
+    public Optional<FavoriteState> unfavorite(Long userId, Long resourceId) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("resourceId", resourceId);
+        List<Double> removed = jdbc.queryForList(DELETE_SQL, params, Double.class);
+        if (removed.isEmpty()) {
+            return currentCount(resourceId).map(count -> new FavoriteState(false, count));
+        }
+        meterRegistry.counter("resources.favorites", "action", "remove").increment();
+        double weight = Math.exp(-removed.get(0) / tauSeconds);
+        return Optional.of(new FavoriteState(false, bump(resourceId, -1, -weight)));
+    }
+
+    /** Ids of the user's favorite resources, most recent first. */
+    @Transactional(readOnly = true)
+    public List<Long> favoriteIds(Long userId) {
+        return jdbc.queryForList(USER_FAVORITES_SQL, new MapSqlParameterSource("userId", userId), Long.class);
+    }
+
+    /** The current ranking, as of the last refresh. */
+    public PopularSnapshot popular() {
+        return popular;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.resources.popular.refresh-ms:60000}")
+    public void refreshPopular() {
+        try {
+            List<PopularResource> ranking = jdbc.query(POPULAR_SQL, new MapSqlParameterSource()
+                    .addValue("tau", tauSeconds)
+                    .addValue("limit", popularSize), (rs, n) -> new PopularResource(
+                    rs.getLong("id"),
+                    rs.getString("title"),
+                    rs.getString("description"),
+                    rs.getString("category"),
+                    rs.getString("file_url"),
+                    rs.getTimestamp("created_at").toLocalDateTime(),
+                    rs.getInt("favorite_count"),
+                    Math.round(rs.getDouble("score") * 1000) / 1000.0));
+            popular = serialize(ranking.stream().filter(p -> p.score() >= MIN_SCORE).toList());
+        } catch (DataAccessException e) {
+            log.warn("Popular resources refresh failed, keeping the last ranking: {}", e.getMessage());
+        }
+    }
+
+    private int bump(Long resourceId, int delta, double weight) {
+        Integer count = jdbc.queryForObject(BUMP_SQL, new MapSqlParameterSource()
+                .addValue("resourceId", resourceId)
+                .addValue("delta", delta)
+                .addValue("weight", weight)
+                .addValue("tau", tauSeconds), Integer.class);
+        return count == null ? 0 : count;
+    }
+
+    private Optional<Integer> currentCount(Long resourceId) {
+        return jdbc.queryForList(COUNT_SQL, new MapSqlParameterSource("resourceId", resourceId), Integer.class)
+                .stream().findFirst();
+    }
+
+    private PopularSnapshot serialize(List<PopularResource> ranking) {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(ranking);
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return new PopularSnapshot(body, "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"");
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not serialize popular resources", e);
+        }
+    }
+}
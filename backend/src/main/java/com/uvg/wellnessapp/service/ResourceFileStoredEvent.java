@@ -0,0 +1,7 @@
+package com.uvg.wellnessapp.service;
+
+/**
+ * Published when a resource is saved with an uploaded file; handled after commit by
+ * {@link ImageDerivativeService}.
+ */
+public record ResourceFileStoredEvent(Long resourceId, String fileKey) {}
@@ -0,0 +1,149 @@
+package com.uvg.wellnessapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.HtmlUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Full-text search over approved resources ({@code GET /api/v1/resources/search}).
+ * <p>
+ * Matches use the generated {@code resources.search_vector} column and its GIN index (V20),
+ * with the query parsed by {@code websearch_to_tsquery}, so user input ("quoted phrases",
+ * {@code or}, {@code -word}) can never be a syntax error. Results are ranked with
+ * {@code ts_rank_cd} and paged with a keyset on {@code (rank, id)}. Snippets come from
+ * {@code ts_headline}, which re-parses the text, so it runs only on the rows of the page.
+ */
+@Service
+public class ResourceSearchService {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 50;
+    public static final int MAX_QUERY_LENGTH = 200;
+
+    // Control characters mark the matches: they survive HTML escaping and never occur in text we store
+    private static final String MATCH_START = "\u0002";
+    private static final String MATCH_END = "\u0003";
+
+    private static final String HEADLINE_OPTIONS = "StartSel=" + MATCH_START + ", StopSel=" + MATCH_END
+            + ", MaxWords=30, MinWords=12, MaxFragments=2, FragmentDelimiter=\" … \"";
+
+    // Normalization 1 divides by 1 + log(length), so long descriptions do not win on volume alone
+    private static final String SEARCH_SQL = """
+            WITH q AS (SELECT websearch_to_tsquery('spanish', :q) AS query),
+            hits AS (
+                SELECT r.id, r.title, r.description, r.category, r.file_url, r.created_at,
+                       ts_rank_cd(r.search_vector, q.query, 1) AS rank
+                FROM resources r, q
+                WHERE r.status = 'APPROVED' AND r.search_vector @@ q.query%s%s
+                ORDER BY rank DESC, r.id DESC
+                LIMIT :limit)
+            SELECT hits.*, ts_headline('spanish', coalesce(hits.description, hits.title), q.query, :options) AS snippet
+            FROM hits, q
+            ORDER BY rank DESC, id DESC""";
+
+    /**
+     * One result. {@code snippet} is HTML: the text is escaped and the matched words are
+     * wrapped in {@code <mark>}.
+     */
+    public record Hit(Long id, String title, String category, String fileUrl, LocalDateTime createdAt,
+                      String snippet, float rank) {}
+
+    /** A page of results; {@code nextCursor} is null on the last page. */
+    public record Result(List<Hit> hits, String nextCursor) {}
+
+    private record Cursor(float rank, long id) {}
+
+    private static final RowMapper<Hit> ROW_MAPPER = (rs, n) -> new Hit(
+            rs.getLong("id"),
+            rs.getString("title"),
+            rs.getString("category"),
+            rs.getString("file_url"),
+            rs.getTimestamp("created_at").toLocalDateTime(),
+            toHtml(rs.getString("snippet")),
+            rs.getFloat("rank"));
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final Timer timer;
+
+    public ResourceSearchService(NamedParameterJdbcTemplate jdbc, MeterRegistry meterRegistry) {
+        this.jdbc = jdbc;
+        this.timer = Timer.builder("resources.search.duration").register(meterRegistry);
+    }
+
+    /**
+     * Searches approved resources, best match first.
+     *
+     * @param category category to filter by (any spelling of one of {@link ResourceCategories#ALL}
+     *                 matches it), or null for all
+     * @param cursor   {@link Result#nextCursor()} of the previous page, or null for the first
+     * @throws IllegalArgumentException if the query is blank or too long, or the cursor is malformed
+     */
+    public Result search(String query, String category, String cursor, int limit) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Query is required");
+        }
+        if (query.length() > MAX_QUERY_LENGTH) {
+            throw new IllegalArgumentException("Query too long");
+        }
+        Cursor after = cursor == null ? null : decodeCursor(cursor);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+        String sql = SEARCH_SQL.formatted(
+                category == null ? "" : " AND r.category = :category",
+                after == null ? "" : " AND (ts_rank_cd(r.search_vector, q.query, 1), r.id) < (CAST(:afterRank AS REAL), :afterId)");
+        // One extra row tells whether there is a next page
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("q", query.trim())
+                .addValue("options", HEADLINE_OPTIONS)
+                .addValue("category", category == null ? null : ResourceCategories.canonical(category).orElse(category))
+                .addValue("limit", pageSize + 1);
+        if (after != null) {
+            params.addValue("afterRank", after.rank()).addValue("afterId", after.id());
+        }
+
+        List<Hit> hits = timer.record(() -> jdbc.query(sql, params, ROW_MAPPER));
+        String nextCursor = null;
+        if (hits.size() > pageSize) {
+            hits = hits.subList(0, pageSize);
+            Hit last = hits.get(pageSize - 1);
+            nextCursor = encodeCursor(new Cursor(last.rank(), last.id()));
+        }
+        return new Result(hits, nextCursor);
+    }
+
+    private static String toHtml(String headline) {
+        if (headline == null) {
+            return null;
+        }
+        return HtmlUtils.htmlEscape(headline, StandardCharsets.UTF_8.name())
+                .replace(MATCH_START, "<mark>")
+                .replace(MATCH_END, "</mark>");
+    }
+
+    // Opaque to clients: base64url of "<rank>|<id>"; Float.toString round-trips exactly
+    private static String encodeCursor(Cursor cursor) {
+        String raw = cursor.rank() + "|" + cursor.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf('|');
+            return new Cursor(Float.parseFloat(raw.substring(0, Math.max(sep, 0))),
+                    Long.parseLong(raw.substring(sep + 1)));
+        } catch (IllegalArgumentException e) {
+            // Bad base64 and bad numbers (NumberFormatException) alike
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
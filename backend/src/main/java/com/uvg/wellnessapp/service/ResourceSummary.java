@@ -0,0 +1,13 @@
+package com.uvg.wellnessapp.service;
+
+import java.time.LocalDateTime;
+
+/** The public fields of an approved resource, as listed by {@link ResourceCatalog}. */
+public record ResourceSummary(
+        Long id,
+        String title,
+        String description,
+        String category,
+        String fileUrl,
+        LocalDateTime createdAt
+) {}
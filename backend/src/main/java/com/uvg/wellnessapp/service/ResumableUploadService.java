@@ -0,0 +1,354 @@
+package com.uvg.wellnessapp.service;
+
+import com.uvg.wellnessapp.domain.UploadSession;
+import com.uvg.wellnessapp.repository.UploadSessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Resumable uploads, following the tus protocol: create an upload with its total length,
+ * append chunks at the offset the server reports, then turn the finished file into a
+ * resource file with {@link #complete}.
+ * <p>
+ * Chunks are streamed from the request straight into the partial file with a
+ * {@link FileChannel}, never buffered whole, and the file's size is the offset, so a dropped
+ * connection keeps every byte that arrived. The type is checked against the file signature
+ * as soon as the first bytes are in, and the declared length caps every chunk. The SHA-256
+ * that names the stored file is computed while appending; after a restart it is recomputed
+ * from the file on completion.
+ */
+@Service
+public class ResumableUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableUploadService.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Bytes needed to check every signature below
+    private static final int SIGNATURE_LENGTH = 12;
+
+    private final UploadSessionRepository sessions;
+    private final FileStorageService storage;
+    private final Duration expiry;
+    private final Counter bytesReceived;
+
+    // Running hash of each upload's prefix; lost on restart, which only costs a re-read
+    private final Map<UUID, RunningHash> hashes = new ConcurrentHashMap<>();
+
+    private static final class RunningHash {
+        final MessageDigest digest = sha256();
+        long position;
+    }
+
+    public ResumableUploadService(UploadSessionRepository sessions,
+                                  FileStorageService storage,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${app.storage.upload.expiry-hours:24}") long expiryHours) {
+        this.sessions = sessions;
+        this.storage = storage;
+        this.expiry = Duration.ofHours(expiryHours);
+        this.bytesReceived = meterRegistry.counter("storage.upload.bytes");
+    }
+
+    /**
+     * Starts an upload. The type and size are checked here, before any bytes are sent.
+     * @throws IllegalArgumentException if the type is not allowed
+     * @throws UploadException if the file is larger than allowed for its type
+     */
+    @Transactional
+    public UploadSession create(Long userId, String fileName, String contentType, long length) throws IOException {
+        String ext = storage.validateType(fileName, contentType);
+        if (length <= 0) {
+            throw new IllegalArgumentException("Upload length must be positive");
+        }
+        long max = storage.maxResumableSize(ext);
+        if (length > max) {
+            throw new UploadException(UploadException.Reason.TOO_LARGE,
+                    "File size exceeds maximum allowed size of " + (max / (1024 * 1024)) + "MB for " + ext);
+        }
+        UploadSession session = sessions.save(new UploadSession(UUID.randomUUID(), userId, fileName, ext,
+                contentType.toLowerCase(Locale.ROOT), length, OffsetDateTime.now().plus(expiry)));
+        Files.createFile(partialFile(session.getId()));
+        log.info("Upload {} started by userId={}: {} ({} bytes)", session.getId(), userId, ext, length);
+        return session;
+    }
+
+    /** The upload, if it exists, belongs to the user and has not expired. */
+    public UploadSession get(UUID id, Long userId) {
+        return sessions.findById(id)
+                .filter(s -> Objects.equals(s.getCreatedBy(), userId) && !s.isExpired())
+                // A completion whose resource rolled back leaves the row without its file
+                .filter(s -> Files.exists(partialFile(s.getId())))
+                .orElseThrow(() -> new UploadException(UploadException.Reason.NOT_FOUND, "Upload not found"));
+    }
+
+    /** Bytes received so far. */
+    public long offset(UploadSession session) throws IOException {
+        return Files.size(partialFile(session.getId()));
+    }
+
+    /**
+     * Appends the request body at {@code offset}, which must be the current size of the upload.
+     * If the client goes away mid-chunk, the bytes received are kept.
+     * @return the new offset
+     */
+    public long append(UploadSession session, long offset, InputStream body) throws IOException {
+        UUID id = session.getId();
+        long length = session.getUploadLength();
+        try (FileChannel channel = FileChannel.open(partialFile(id), StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock lock = tryLock(channel)) {
+            if (lock == null) {
+                throw new UploadException(UploadException.Reason.LOCKED, "Another chunk is being written");
+            }
+            if (channel.size() != offset) {
+                throw new UploadException(UploadException.Reason.OFFSET_MISMATCH,
+                        "Upload-Offset " + offset + " does not match " + channel.size());
+            }
+
+            RunningHash hash = hashes.computeIfAbsent(id, k -> new RunningHash());
+            boolean hashing = hash.position == offset;
+            boolean signatureChecked = offset >= SIGNATURE_LENGTH;
+            long position = offset;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try {
+                int read;
+                while ((read = readChunk(body, buffer)) > 0) {
+                    if (position + read > length) {
+                        throw new UploadException(UploadException.Reason.TOO_LARGE, "Chunk goes past Upload-Length");
+                    }
+                    ByteBuffer src = ByteBuffer.wrap(buffer, 0, read);
+                    while (src.hasRemaining()) {
+                        position += channel.write(src, position);
+                    }
+                    if (hashing) {
+                        hash.digest.update(buffer, 0, read);
+                        hash.position = position;
+                    }
+                    if (!signatureChecked && (position >= SIGNATURE_LENGTH || position == length)) {
+                        checkSignature(channel, session.getExtension());
+                        signatureChecked = true;
+                    }
+                }
+            } catch (UploadException e) {
+                if (e.getReason() == UploadException.Reason.INVALID_CONTENT) {
+                    // Not the declared type: nothing received so far is worth keeping
+                    channel.truncate(0);
+                    hashes.remove(id);
+                }
+                throw e;
+            } finally {
+                bytesReceived.increment(Math.max(0, channel.size() - offset));
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Stores a finished upload through {@link FileStorageService} and forgets the session.
+     * Call it inside the transaction that saves the resource, like {@link FileStorageService#store}.
+     * Not transactional itself, so a rejected completion does not doom the caller's transaction.
+     * The received file is only deleted once that transaction commits: on rollback the session
+     * comes back with its bytes, and the client can complete it again without resending them.
+     */
+    public FileStorageService.Stored complete(UploadSession session) throws IOException {
+        UUID id = session.getId();
+        Path file = partialFile(id);
+        long size = Files.size(file);
+        if (size != session.getUploadLength()) {
+            throw new UploadException(UploadException.Reason.INCOMPLETE,
+                    "Upload incomplete: " + size + " of " + session.getUploadLength() + " bytes");
+        }
+        RunningHash hash = hashes.remove(id);
+        String sha256 = hash != null && hash.position == size
+                ? HexFormat.of().formatHex(hash.digest.digest())
+                : FileStorageService.sha256Hex(file);
+
+        // The store consumes a second link to the same bytes, which costs no copy
+        Path handover = storage.partialDir().resolve(id + ".complete");
+        Files.deleteIfExists(handover);
+        linkOrCopy(file, handover);
+        FileStorageService.Stored stored;
+        try {
+            stored = storage.adopt(handover, sha256, session.getExtension());
+        } finally {
+            Files.deleteIfExists(handover);
+        }
+        sessions.delete(session);
+        // A rolled-back blob reference is left to StorageGarbageCollector
+        FileStorageService.afterCompletion(committed -> {
+            if (committed) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warn("Could not delete completed upload {}: {}", id, e.getMessage());
+                }
+            }
+        });
+        log.info("Upload {} completed as {}", id, stored.key());
+        return stored;
+    }
+
+    /** Abandons an upload and deletes what was received. */
+    @Transactional
+    public void cancel(UploadSession session) throws IOException {
+        sessions.delete(session);
+        hashes.remove(session.getId());
+        Files.deleteIfExists(partialFile(session.getId()));
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.upload.cleanup-ms:600000}")
+    public void removeExpired() {
+        for (UploadSession session : sessions.findTop100ByExpiresAtBefore(OffsetDateTime.now())) {
+            try {
+                cancel(session);
+                log.info("Expired upload {} removed", session.getId());
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not remove expired upload {}: {}", session.getId(), e.getMessage());
+            }
+        }
+        removeOrphans();
+    }
+
+    /**
+     * Deletes received files that no session points to any more: the account was deleted (the
+     * row goes with it), or the node crashed between the row and its file or before a completed
+     * upload's file was deleted. Also sweeps the temp files of interrupted copies. Only files
+     * untouched for longer than the upload expiry are considered, so none is still in use.
+     */
+    private void removeOrphans() {
+        Instant cutoff = Instant.now().minus(expiry);
+        int removed = 0;
+        try (Stream<Path> files = Files.list(storage.partialDir())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)
+                        && Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)
+                        && !hasSession(file.getFileName().toString())
+                        && Files.deleteIfExists(file)) {
+                    removed++;
+                }
+            }
+            removed += storage.removeStaleTempFiles(cutoff);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not sweep orphaned upload files: {}", e.getMessage());
+        }
+        if (removed > 0) {
+            log.info("Removed {} orphaned upload files", removed);
+        }
+    }
+
+    // Partial files are named by session id; anything else (e.g. a leftover ".complete" link) has none
+    private boolean hasSession(String fileName) {
+        try {
+            return sessions.existsById(UUID.fromString(fileName));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private Path partialFile(UUID id) {
+        return storage.partialDir().resolve(id.toString());
+    }
+
+    private static void linkOrCopy(Path file, Path link) throws IOException {
+        try {
+            Files.createLink(link, file);
+        } catch (UnsupportedOperationException | IOException e) {
+            log.debug("Hard link not possible ({}), copying the upload instead", e.toString());
+            Files.copy(file, link);
+        }
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another thread of this JVM
+            return null;
+        }
+    }
+
+    // A read error means the client went away; keep what was written
+    private static int readChunk(InputStream body, byte[] buffer) {
+        try {
+            return body.readNBytes(buffer, 0, buffer.length);
+        } catch (IOException e) {
+            log.debug("Upload chunk interrupted: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    // Cheap check that the bytes look like the declared type, before a whole video is accepted
+    private static void checkSignature(FileChannel channel, String ext) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(SIGNATURE_LENGTH);
+        channel.read(head, 0);
+        byte[] b = Arrays.copyOf(head.array(), head.position());
+        boolean ok = switch (ext) {
+            case ".pdf" -> startsWith(b, 0, "%PDF-");
+            case ".png" -> startsWith(b, 0, (byte) 0x89, (byte) 'P', (byte) 'N', (byte) 'G');
+            case ".jpg", ".jpeg" -> startsWith(b, 0, (byte) 0xFF, (byte) 0xD8, (byte) 0xFF);
+            case ".gif" -> startsWith(b, 0, "GIF8");
+            case ".webp" -> startsWith(b, 0, "RIFF") && startsWith(b, 8, "WEBP");
+            case ".wav" -> startsWith(b, 0, "RIFF") && startsWith(b, 8, "WAVE");
+            case ".mp3" -> startsWith(b, 0, "ID3") || (b.length > 1 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xE0) == 0xE0);
+            case ".ogg" -> startsWith(b, 0, "OggS");
+            case ".mp4" -> startsWith(b, 4, "ftyp");
+            case ".webm" -> startsWith(b, 0, (byte) 0x1A, (byte) 0x45, (byte) 0xDF, (byte) 0xA3);
+            case ".doc" -> startsWith(b, 0, (byte) 0xD0, (byte) 0xCF, (byte) 0x11, (byte) 0xE0);
+            case ".docx" -> startsWith(b, 0, "PK");
+            case ".rtf" -> startsWith(b, 0, "{\\rtf");
+            default -> true; // plain text has no signature
+        };
+        if (!ok) {
+            throw new UploadException(UploadException.Reason.INVALID_CONTENT, "File content does not match " + ext);
+        }
+    }
+
+    private static boolean startsWith(byte[] data, int from, String ascii) {
+        return startsWith(data, from, ascii.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static boolean startsWith(byte[] data, int from, byte... prefix) {
+        if (data.length < from + prefix.length) {
+            return false;
+        }
+        return Arrays.equals(data, from, from + prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.uvg.wellnessapp.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Blobs as objects in an S3 bucket, or any S3-compatible store (MinIO, Ceph, R2...) via
+ * {@code app.storage.s3.endpoint}. Every node sees the same files, and downloads are redirected
+ * to presigned URLs so the bytes go from the bucket to the client directly.
+ * <p>
+ * Files larger than one part are sent as a multipart upload, each part streamed from disk,
+ * so memory use does not grow with file size.
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "s3")
+public class S3BlobStore implements BlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(S3BlobStore.class);
+
+    // S3 rejects parts under 5 MiB, except the last
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    private final S3Client s3;
+    private final S3Presigner presigner;
+    private final String bucket;
+    private final String prefix;
+    private final long partSize;
+    private final Duration presignTtl;
+    private final Path scratchDir;
+
+    public S3BlobStore(
+            @Value("${app.storage.s3.bucket}") String bucket,
+            @Value("${app.storage.s3.prefix:}") String prefix,
+            @Value("${app.storage.s3.region:us-east-1}") String region,
+            @Value("${app.storage.s3.endpoint:}") String endpoint,
+            @Value("${app.storage.s3.path-style:false}") boolean pathStyle,
+            @Value("${app.storage.s3.access-key:}") String accessKey,
+            @Value("${app.storage.s3.secret-key:}") String secretKey,
+            @Value("${app.storage.s3.part-size:16MB}") DataSize partSize,
+            @Value("${app.storage.s3.presign-minutes:10}") long presignMinutes,
+            @Value("${app.storage.s3.scratch-dir:${java.io.tmpdir}/wellness-uploads}") String scratchDir
+    ) throws IOException {
+        AwsCredentialsProvider credentials = accessKey.isBlank()
+                ? DefaultCredentialsProvider.create()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+        S3Configuration config = S3Configuration.builder().pathStyleAccessEnabled(pathStyle).build();
+
+        var client = S3Client.builder().region(Region.of(region)).credentialsProvider(credentials)
+                .serviceConfiguration(config);
+        var presign = S3Presigner.builder().region(Region.of(region)).credentialsProvider(credentials)
+                .serviceConfiguration(config);
+        if (!endpoint.isBlank()) {
+            client.endpointOverride(URI.create(endpoint));
+            presign.endpointOverride(URI.create(endpoint));
+        }
+        this.s3 = client.build();
+        this.presigner = presign.build();
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.partSize = Math.max(MIN_PART_SIZE, partSize.toBytes());
+        this.presignTtl = Duration.ofMinutes(presignMinutes);
+        this.scratchDir = Path.of(scratchDir).toAbsolutePath().normalize();
+        Files.createDirectories(this.scratchDir);
+        log.info("Blob storage: s3://{}/{} ({})", bucket, prefix, endpoint.isBlank() ? region : endpoint);
+    }
+
+    @Override
+    public void put(String key, Path file) throws IOException {
+        long size = Files.size(file);
+        try {
+            if (size <= partSize) {
+                s3.putObject(b -> b.bucket(bucket).key(prefix + key), RequestBody.fromFile(file));
+            } else {
+                putMultipart(prefix + key, file, size);
+            }
+        } catch (SdkException e) {
+            throw new IOException("Upload of " + key + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void putMultipart(String objectKey, Path file, long size) throws IOException {
+        String uploadId = s3.createMultipartUpload(b -> b.bucket(bucket).key(objectKey)).uploadId();
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            for (long offset = 0; offset < size; offset += partSize) {
+                int partNumber = parts.size() + 1;
+                long length = Math.min(partSize, size - offset);
+                long from = offset;
+                // Reopened on each attempt, so the SDK can retry a part without buffering it
+                String etag = s3.uploadPart(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId)
+                                .partNumber(partNumber).contentLength(length),
+                        RequestBody.fromContentProvider(() -> range(file, from, length), length,
+                                "application/octet-stream")).eTag();
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(etag).build());
+            }
+            s3.completeMultipartUpload(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build()));
+        } catch (SdkException | UncheckedIOException e) {
+            s3.abortMultipartUpload(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId));
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<BlobInfo> stat(String key) throws IOException {
+        try {
+            HeadObjectResponse head = s3.headObject(b -> b.bucket(bucket).key(prefix + key));
+            return Optional.of(new BlobInfo(head.contentLength(), head.lastModified().toEpochMilli()));
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new IOException("Stat of " + key + " failed: " + e.getMessage(), e);
+        } catch (SdkException e) {
+            throw new IOException("Stat of " + key + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        try {
+            return s3.getObject(b -> b.bucket(bucket).key(prefix + key));
+        } catch (SdkException e) {
+            throw new IOException("Download of " + key + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    // Server-side copy: the bytes stay in the bucket (single copy works up to 5 GB)
+    @Override
+    public void rename(String from, String to) throws IOException {
+        try {
+            s3.copyObject(b -> b.sourceBucket(bucket).sourceKey(prefix + from)
+                    .destinationBucket(bucket).destinationKey(prefix + to));
+            s3.deleteObject(b -> b.bucket(bucket).key(prefix + from));
+        } catch (SdkException e) {
+            throw new IOException("Rename of " + from + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3.deleteObject(b -> b.bucket(bucket).key(prefix + key));
+        } catch (SdkException e) {
+            throw new IOException("Delete of " + key + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Stream<String> keys() throws IOException {
+        try {
+            return s3.listObjectsV2Paginator(b -> b.bucket(bucket).prefix(prefix))
+                    .contents().stream()
+                    .map(o -> o.key().substring(prefix.length()))
+                    .filter(name -> !name.isEmpty() && !name.startsWith(".") && name.indexOf('/') < 0);
+        } catch (SdkException e) {
+            throw new IOException("Listing failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Stream<String> keys(String keyPrefix) throws IOException {
+        try {
+            return s3.listObjectsV2Paginator(b -> b.bucket(bucket).prefix(prefix + keyPrefix))
+                    .contents().stream()
+                    .map(o -> o.key().substring(prefix.length()))
+                    .filter(name -> name.indexOf('/') < 0);
+        } catch (SdkException e) {
+            throw new IOException("Listing failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Optional<URI> presignedGet(String key, String contentType, String cacheControl) {
+        try {
+            return Optional.of(presigner.presignGetObject(p -> p.signatureDuration(presignTtl)
+                    .getObjectRequest(g -> g.bucket(bucket).key(prefix + key)
+                            .responseContentType(contentType)
+                            .responseCacheControl(cacheControl))).url().toURI());
+        } catch (Exception e) {
+            log.warn("Could not presign {}: {}", key, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Duration presignTtl() {
+        return presignTtl;
+    }
+
+    @Override
+    public Path scratchDir() {
+        return scratchDir;
+    }
+
+    private static InputStream range(Path file, long offset, long length) {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ).position(offset);
+            return new RangeInputStream(channel, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reads [position, position + length) of a file straight from its channel
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long remaining;
+
+        RangeInputStream(FileChannel channel, long length) {
+            this.channel = channel;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        presigner.close();
+        s3.close();
+    }
+}
@@ -0,0 +1,325 @@
+package com.uvg.wellnessapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Removes blobs that nothing references, e.g. the file of a resource whose transaction rolled
+ * back after {@link FileStorageService#store} had written it.
+ * <p>
+ * Each run loads every referenced key into a hash set ({@code resources.file_key},
+ * {@code resource_files.file_key} and referenced {@code stored_blobs}) and walks the store's
+ * keys against it as a parallel stream. An unreferenced blob older than {@code grace-hours}
+ * is not deleted but renamed to {@code .orphan-<epoch second>-<key>}, where it is no longer
+ * served; a later run deletes it once it has sat in quarantine for {@code quarantine-hours},
+ * or puts it back if something references the key again. Stat, rename and delete calls run
+ * on virtual threads, {@code concurrency} at a time, since with S3 each one is a round trip.
+ * Deletes whose transaction never completed ({@code .deleted-*}) are cleared once they have
+ * outlived a run. Content-addressed blobs are quarantined while holding a {@code stored_blobs} row
+ * lock, so an upload of the same content waits rather than losing its file. Only one node
+ * collects at a time ({@code pg_try_advisory_lock}, as in {@link TokenPurgeJob}).
+ */
+@Service
+public class StorageGarbageCollector {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageGarbageCollector.class);
+
+    private static final long LOCK_KEY = 0x57454C4C00000002L;
+
+    static final String QUARANTINE_PREFIX = ".orphan-";
+
+    private static final String REFERENCED_SQL = """
+            SELECT file_key FROM resources WHERE file_key IS NOT NULL
+            UNION SELECT file_key FROM resource_files WHERE file_key IS NOT NULL
+            UNION SELECT blob_key FROM stored_blobs WHERE ref_count > 0""";
+
+    private static final String IS_REFERENCED_SQL = """
+            SELECT EXISTS (SELECT 1 FROM resources WHERE file_key = ?)
+                OR EXISTS (SELECT 1 FROM resource_files WHERE file_key = ?)
+                OR EXISTS (SELECT 1 FROM stored_blobs WHERE blob_key = ? AND ref_count > 0)""";
+
+    // A placeholder row holds the lock; FileStorageService.adopt waits on it, then finds no row
+    private static final String CLAIM_SQL = """
+            INSERT INTO stored_blobs (blob_key, size_bytes, ref_count) VALUES (?, ?, 0)
+            ON CONFLICT (blob_key) DO NOTHING""";
+
+    private static final String UNCLAIM_SQL = "DELETE FROM stored_blobs WHERE blob_key = ? AND ref_count = 0";
+
+    /** What a run did; {@code reclaimedBytes} counts blobs actually deleted. */
+    public record Report(long scanned, int quarantined, long quarantinedBytes, int deleted, long reclaimedBytes,
+                         int restored, int failed) {}
+
+    private final BlobStore blobs;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final MeterRegistry meterRegistry;
+    private final Timer timer;
+
+    // Pending-delete names found by the previous run on this node
+    private volatile Set<String> trashSeen = Set.of();
+
+    @Value("${app.storage.gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.storage.gc.grace-hours:24}")
+    private long graceHours;
+
+    @Value("${app.storage.gc.quarantine-hours:72}")
+    private long quarantineHours;
+
+    // Each in-flight call may hold a pooled connection, so keep this well under the pool size
+    @Value("${app.storage.gc.concurrency:4}")
+    private int concurrency;
+
+    public StorageGarbageCollector(BlobStore blobs, JdbcTemplate jdbc, TransactionTemplate tx,
+                                   MeterRegistry meterRegistry) {
+        this.blobs = blobs;
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.meterRegistry = meterRegistry;
+        this.timer = Timer.builder("storage.gc.duration").register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${app.storage.gc.cron:0 45 3 * * *}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            run();
+        } catch (DataAccessException | UncheckedIOException e) {
+            log.warn("Storage GC failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Quarantines new orphans and deletes expired ones.
+     *
+     * @return what was done, or empty if another node holds the GC lock
+     */
+    public Optional<Report> run() {
+        return Optional.ofNullable(jdbc.execute((Connection con) -> {
+            if (!advisoryLock(con, "SELECT pg_try_advisory_lock(?)")) {
+                log.debug("Storage GC skipped: another node is running it");
+                return null;
+            }
+            try {
+                return timer.record(this::collect);
+            } finally {
+                advisoryLock(con, "SELECT pg_advisory_unlock(?)");
+            }
+        }));
+    }
+
+    private Report collect() {
+        long now = System.currentTimeMillis();
+        long graceMillis = Duration.ofHours(graceHours).toMillis();
+        long quarantineSeconds = Duration.ofHours(quarantineHours).toSeconds();
+        Counts counts = new Counts();
+
+        Set<String> referenced = new HashSet<>(jdbc.queryForList(REFERENCED_SQL, String.class));
+        List<String> candidates;
+        try (Stream<String> keys = blobs.keys()) {
+            candidates = keys.parallel()
+                    .peek(key -> counts.scanned.incrementAndGet())
+                    .filter(key -> !referenced.contains(key))
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        forEachParallel(candidates, key -> quarantine(key, now - graceMillis, now / 1000, counts), counts);
+
+        forEachParallel(listInternal(QUARANTINE_PREFIX), name -> expire(name, now / 1000 - quarantineSeconds, counts), counts);
+        // A rename keeps the file's old mtime, so trash is judged by having outlived a whole run
+        List<String> trash = listInternal(FileStorageService.TRASH_PREFIX);
+        Set<String> seenBefore = trashSeen;
+        forEachParallel(trash.stream().filter(seenBefore::contains).toList(),
+                name -> stat(name).ifPresent(info -> delete(name, info.size(), counts)), counts);
+        trashSeen = trash.stream().filter(name -> !seenBefore.contains(name)).collect(Collectors.toSet());
+
+        Report report = new Report(counts.scanned.get(), counts.quarantined.get(), counts.quarantinedBytes.get(),
+                counts.deleted.get(), counts.reclaimedBytes.get(), counts.restored.get(), counts.failed.get());
+        meterRegistry.counter("storage.gc.quarantined").increment(report.quarantined());
+        meterRegistry.counter("storage.gc.deleted").increment(report.deleted());
+        meterRegistry.counter("storage.gc.reclaimed.bytes").increment(report.reclaimedBytes());
+        meterRegistry.counter("storage.gc.failures").increment(report.failed());
+        log.info("Storage GC: {} blobs scanned, {} referenced, {} quarantined ({} KiB), {} deleted ({} KiB reclaimed), "
+                        + "{} restored, {} failed",
+                report.scanned(), referenced.size(), report.quarantined(), report.quarantinedBytes() / 1024,
+                report.deleted(), report.reclaimedBytes() / 1024, report.restored(), report.failed());
+        return report;
+    }
+
+    private void quarantine(String key, long modifiedBefore, long nowSeconds, Counts counts) {
+        Optional<BlobStore.BlobInfo> info = stat(key);
+        // Young blobs may belong to a transaction that has not committed yet
+        if (info.isEmpty() || info.get().lastModified() >= modifiedBefore) {
+            return;
+        }
+        String target = QUARANTINE_PREFIX + nowSeconds + "-" + key;
+        boolean moved;
+        if (FileStorageService.CONTENT_KEY.matcher(key).matches()) {
+            moved = Boolean.TRUE.equals(tx.execute(status -> {
+                // Referenced (or being referenced, which waits for that transaction) since the snapshot
+                if (jdbc.update(CLAIM_SQL, key, info.get().size()) == 0) {
+                    return false;
+                }
+                rename(key, target);
+                jdbc.update(UNCLAIM_SQL, key);
+                return true;
+            }));
+        } else {
+            // Keys from before content addressing are never minted again, so none can reappear
+            moved = !isReferenced(key);
+            if (moved) {
+                rename(key, target);
+            }
+        }
+        if (moved) {
+            counts.quarantined.incrementAndGet();
+            counts.quarantinedBytes.addAndGet(info.get().size());
+            log.info("Quarantined unreferenced blob {} ({} bytes) as {}", key, info.get().size(), target);
+        }
+    }
+
+    private void expire(String name, long quarantinedBefore, Counts counts) {
+        int sep = name.indexOf('-', QUARANTINE_PREFIX.length());
+        long quarantinedAt;
+        try {
+            quarantinedAt = Long.parseLong(name.substring(QUARANTINE_PREFIX.length(), sep));
+        } catch (RuntimeException e) {
+            log.warn("Unexpected name in quarantine: {}", name);
+            return;
+        }
+        if (quarantinedAt >= quarantinedBefore) {
+            return;
+        }
+        String key = name.substring(sep + 1);
+        Optional<BlobStore.BlobInfo> info = stat(name);
+        if (info.isEmpty()) {
+            return;
+        }
+        // Something took the key back while it sat in quarantine: restore unless it was stored again
+        if (isReferenced(key) && stat(key).isEmpty()) {
+            rename(name, key);
+            counts.restored.incrementAndGet();
+            log.warn("Restored quarantined blob {}: it is referenced again", key);
+            return;
+        }
+        delete(name, info.get().size(), counts);
+    }
+
+    private void delete(String name, long size, Counts counts) {
+        try {
+            blobs.delete(name);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        counts.deleted.incrementAndGet();
+        counts.reclaimedBytes.addAndGet(size);
+        log.info("Deleted orphaned blob {} ({} bytes)", name, size);
+    }
+
+    private boolean isReferenced(String key) {
+        return Boolean.TRUE.equals(jdbc.queryForObject(IS_REFERENCED_SQL, Boolean.class, key, key, key));
+    }
+
+    private List<String> listInternal(String prefix) {
+        try (Stream<String> keys = blobs.keys(prefix)) {
+            return keys.toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Optional<BlobStore.BlobInfo> stat(String key) {
+        try {
+            return blobs.stat(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void rename(String from, String to) {
+        try {
+            blobs.rename(from, to);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Storage calls are round trips with S3: keep a few in flight. One failure does not stop the rest
+    private void forEachParallel(List<String> keys, Consumer<String> action, Counts counts) {
+        Semaphore permits = new Semaphore(Math.max(1, concurrency));
+        AtomicInteger failed = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String key : keys) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Storage GC interrupted");
+                    break;
+                }
+                executor.submit(() -> {
+                    try {
+                        action.accept(key);
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                        log.warn("Storage GC: {} failed: {}", key, e.getMessage());
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+        counts.failed.addAndGet(failed.get());
+    }
+
+    private static boolean advisoryLock(Connection con, String sql) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setLong(1, LOCK_KEY);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static final class Counts {
+        final AtomicLong scanned = new AtomicLong();
+        final AtomicInteger quarantined = new AtomicInteger();
+        final AtomicLong quarantinedBytes = new AtomicLong();
+        final AtomicInteger deleted = new AtomicInteger();
+        final AtomicLong reclaimedBytes = new AtomicLong();
+        final AtomicInteger restored = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+    }
+}
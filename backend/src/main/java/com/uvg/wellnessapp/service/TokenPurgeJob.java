@@ -0,0 +1,154 @@
+package com.uvg.wellnessapp.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes dead rows from the token and outbox tables.
+ * <p>
+ * Rows go in small batches ({@code DELETE ... WHERE ctid IN (SELECT ctid ... LIMIT n)}), each
+ * committed on its own, so no run holds row locks or a long transaction on tables that
+ * logins use. Only one node purges at a time: the run holds a session-level
+ * {@code pg_try_advisory_lock} on the connection that does the deletes and skips if
+ * another node has it.
+ */
+@Service
+public class TokenPurgeJob {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenPurgeJob.class);
+
+    // Arbitrary, fixed key shared by every node
+    private static final long LOCK_KEY = 0x57454C4C00000001L;
+
+    private record Target(String table, String condition) {}
+
+    // TIMESTAMP columns hold JVM local time, hence LOCALTIMESTAMP; the newer tables use TIMESTAMPTZ
+    private static final List<Target> TARGETS = List.of(
+            new Target("password_reset_tokens", "used OR expires_at < LOCALTIMESTAMP"),
+            // Used refresh tokens stay until expiry so a replay is still recognised as reuse
+            new Target("refresh_tokens", "expires_at < LOCALTIMESTAMP"),
+            new Target("token_revocations", "expires_at < now()"),
+            new Target("email_outbox", "status <> 'PENDING' AND created_at < now() - make_interval(days => ?)"));
+
+    private final JdbcTemplate jdbc;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.maintenance.purge.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.maintenance.purge.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.maintenance.purge.pause-ms:50}")
+    private long pauseMs;
+
+    @Value("${app.maintenance.purge.outbox-retention-days:14}")
+    private int outboxRetentionDays;
+
+    public TokenPurgeJob(JdbcTemplate jdbc, MeterRegistry meterRegistry) {
+        this.jdbc = jdbc;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Scheduled(cron = "${app.maintenance.purge.cron:0 15 * * * *}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            run();
+        } catch (DataAccessException e) {
+            log.warn("Token purge failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Purges every target table.
+     *
+     * @return rows removed, or -1 if another node holds the purge lock
+     */
+    public long run() {
+        Long removed = jdbc.execute((Connection con) -> {
+            if (!advisoryLock(con, "SELECT pg_try_advisory_lock(?)")) {
+                log.debug("Token purge skipped: another node is running it");
+                return -1L;
+            }
+            try {
+                long total = 0;
+                for (Target target : TARGETS) {
+                    total += purge(con, target);
+                }
+                return total;
+            } finally {
+                advisoryLock(con, "SELECT pg_advisory_unlock(?)");
+            }
+        });
+        return removed == null ? 0 : removed;
+    }
+
+    private long purge(Connection con, Target target) throws SQLException {
+        String sql = "DELETE FROM " + target.table() + " WHERE ctid IN (SELECT ctid FROM " + target.table()
+                + " WHERE " + target.condition() + " LIMIT " + batchSize + ")";
+        boolean hasParam = target.condition().contains("?");
+
+        long start = System.nanoTime();
+        long removed = 0;
+        int batches = 0;
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            if (hasParam) {
+                ps.setInt(1, outboxRetentionDays);
+            }
+            int deleted;
+            do {
+                // Auto-commit: each batch is its own short transaction
+                deleted = ps.executeUpdate();
+                removed += deleted;
+                batches++;
+                if (deleted == batchSize && pauseMs > 0) {
+                    sleep(pauseMs);
+                }
+            } while (deleted == batchSize);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        meterRegistry.counter("maintenance.purge.rows", "table", target.table()).increment(removed);
+        Timer.builder("maintenance.purge.duration").tag("table", target.table())
+                .register(meterRegistry).record(elapsed, TimeUnit.NANOSECONDS);
+        if (removed > 0) {
+            log.info("Purged {} rows from {} in {} batches ({} ms)",
+                    removed, target.table(), batches, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+        return removed;
+    }
+
+    private static boolean advisoryLock(Connection con, String sql) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setLong(1, LOCK_KEY);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
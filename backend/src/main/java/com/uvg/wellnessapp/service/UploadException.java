@@ -0,0 +1,21 @@
+package com.uvg.wellnessapp.service;
+
+/**
+ * Thrown by {@link ResumableUploadService} when a request does not fit the upload's state;
+ * the reason maps to the HTTP status the client should see.
+ */
+public class UploadException extends RuntimeException {
+
+    public enum Reason { NOT_FOUND, OFFSET_MISMATCH, LOCKED, TOO_LARGE, INCOMPLETE, INVALID_CONTENT }
+
+    private final Reason reason;
+
+    public UploadException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
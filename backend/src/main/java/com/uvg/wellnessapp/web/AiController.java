@@ -1,19 +1,38 @@
 package com.uvg.wellnessapp.web;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.uvg.wellnessapp.security.AuthUtils;
+import com.uvg.wellnessapp.service.AiInsightPrecomputeJob;
 import com.uvg.wellnessapp.service.AiInsightService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RestController
 @RequestMapping("/api/v1/ai")
 public class AiController {
 
+    private static final Logger log = LoggerFactory.getLogger(AiController.class);
+    private static final long STREAM_TIMEOUT_MS = 60_000;
+
     private final AiInsightService aiService;
+    private final AiInsightPrecomputeJob precomputeJob;
+    private final ObjectMapper objectMapper;
 
-    public AiController(AiInsightService aiService) {
+    public AiController(AiInsightService aiService, AiInsightPrecomputeJob precomputeJob, ObjectMapper objectMapper) {
         this.aiService = aiService;
+        this.precomputeJob = precomputeJob;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping(value = "/insights", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -27,6 +46,68 @@ public class AiController {
         return ResponseEntity.ok(json);
     }
 
+    /**
+     * Server-Sent Events version of /insights.
+     * Emits a {@code preview} event with the rule-based insight, {@code delta} events ({"text": "..."})
+     * while the model writes, then a single {@code done} event carrying the final validated JSON.
+     * Cached results go straight to {@code done}.
+     */
+    @GetMapping(value = "/insights/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamDashboardInsights(
+            @RequestParam(defaultValue = "false") boolean refresh) {
+        Long userId = AuthUtils.resolveUserId(null);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        AtomicBoolean clientGone = new AtomicBoolean(false);
+        emitter.onTimeout(() -> clientGone.set(true));
+        emitter.onError(e -> clientGone.set(true));
+
+        Thread.ofVirtual().name("ai-insights-stream-" + userId).start(() -> {
+            try {
+                String json = aiService.streamDashboardInsights(userId, refresh, preview -> {
+                    // Rule-based insight painted right away while the model answer streams in
+                    if (!clientGone.get()) {
+                        sendEvent(emitter, "preview", parse(preview), clientGone);
+                    }
+                }, chunk -> {
+                    // Keep assembling after a disconnect so the result still reaches the cache
+                    if (!clientGone.get()) {
+                        sendEvent(emitter, "delta", Map.of("text", chunk), clientGone);
+                    }
+                });
+                if (!clientGone.get()) {
+                    sendEvent(emitter, "done", parse(json), clientGone);
+                    emitter.complete();
+                }
+            } catch (Exception e) {
+                log.error("Error streaming dashboard insights for user {}", userId, e);
+                emitter.completeWithError(e);
+            }
+        });
+
+        return ResponseEntity.ok().header("X-Accel-Buffering", "no").body(emitter);
+    }
+
+    private JsonNode parse(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void sendEvent(SseEmitter emitter, String name, Object data, AtomicBoolean clientGone) {
+        try {
+            // Objects are written as compact JSON, so newlines in the model output cannot break the SSE framing
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            clientGone.set(true);
+        }
+    }
+
     @PostMapping(value = "/assessment-analysis", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<String> getAssessmentAnalysis(@RequestBody AssessmentAnalysisRequest request) {
         Long userId = AuthUtils.resolveUserId(null);
@@ -38,6 +119,27 @@ public class AiController {
         return ResponseEntity.ok(json);
     }
 
+    // Admin: progress of the running pre-generation pass and report of the last one
+    @GetMapping("/batch/status")
+    @PreAuthorize("hasRole('ADMIN')")
+    public AiInsightPrecomputeJob.Status getBatchStatus() {
+        return precomputeJob.getStatus();
+    }
+
+    // Admin: start a pre-generation pass now instead of waiting for the schedule
+    @PostMapping("/batch/run")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> runBatch() {
+        if (!aiService.isAvailable()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "AI not configured"));
+        }
+        if (precomputeJob.isRunning()) {
+            return ResponseEntity.status(409).body(Map.of("error", "Pre-generation already running"));
+        }
+        Thread.ofVirtual().name("ai-precompute-manual").start(precomputeJob::run);
+        return ResponseEntity.accepted().body(Map.of("message", "Pre-generation started"));
+    }
+
     static final class AssessmentAnalysisRequest {
         public String assessmentType;
         public int total;
@@ -1,21 +1,27 @@
 package com.uvg.wellnessapp.web;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.uvg.wellnessapp.domain.User;
 import com.uvg.wellnessapp.security.JwtService;
+import com.uvg.wellnessapp.security.TokenRevocationList;
 import com.uvg.wellnessapp.security.PasswordValidator;
 import com.uvg.wellnessapp.service.PasswordResetService;
+import com.uvg.wellnessapp.service.RefreshTokenService;
 
+import io.jsonwebtoken.JwtException;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import com.uvg.wellnessapp.security.GoogleTokenVerifier;
@@ -34,14 +40,19 @@ public class AuthController {
   private final JwtService jwt;
   private final GoogleTokenVerifier googleTokenVerifier;
   private final PasswordResetService passwordResetService;
+  private final RefreshTokenService refreshTokens;
+  private final TokenRevocationList revocations;
 
   public AuthController(UserRepository users, PasswordEncoder encoder, JwtService jwt,
-                        GoogleTokenVerifier googleTokenVerifier, PasswordResetService passwordResetService) {
+                        GoogleTokenVerifier googleTokenVerifier, PasswordResetService passwordResetService,
+                        RefreshTokenService refreshTokens, TokenRevocationList revocations) {
     this.users = users;
     this.encoder = encoder;
     this.jwt = jwt;
     this.googleTokenVerifier = googleTokenVerifier;
     this.passwordResetService = passwordResetService;
+    this.refreshTokens = refreshTokens;
+    this.revocations = revocations;
   }
 
   public static final class RegisterRequest {
@@ -82,13 +93,51 @@ public class AuthController {
     if (u == null || !encoder.matches(req.password, u.getPasswordHash())) {
       return ResponseEntity.status(401).body(Map.of("error","Credenciales inválidas"));
     }
-    String token = jwt.generateToken(u.getId(), u.getEmail(), u.getRole().name());
-    return ResponseEntity.ok(Map.of(
-      "token", token,
-      "userId", u.getId(),
-      "email", u.getEmail(),
-      "role", u.getRole().name()
-    ));
+    // Hash made with an older, cheaper work factor: replace it while we have the password
+    if (encoder.upgradeEncoding(u.getPasswordHash())) {
+      u.setPasswordHash(encoder.encode(req.password));
+      users.save(u);
+    }
+    return ResponseEntity.ok(session(u, refreshTokens.issue(u.getId())));
+  }
+
+  /**
+   * Trades a refresh token for a new access token and the next refresh token.
+   * One indexed lookup, no password hashing; a token reused after the grace window revokes its whole family.
+   */
+  @PostMapping("/refresh")
+  public ResponseEntity<?> refresh(@RequestBody Map<String, String> body) {
+    return refreshTokens.rotate(body.get("refreshToken"))
+        .<ResponseEntity<?>>map(r -> ResponseEntity.ok(session(r.user(), r.refreshToken())))
+        .orElseGet(() -> ResponseEntity.status(401).body(Map.of("error", "Sesión expirada")));
+  }
+
+  @PostMapping("/logout")
+  public ResponseEntity<Void> logout(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+                                     @RequestBody(required = false) Map<String, String> body) {
+    if (body != null) {
+      refreshTokens.revoke(body.get("refreshToken"));
+    }
+    // The access token would otherwise stay usable until it expires
+    if (authorization != null && authorization.startsWith("Bearer ")) {
+      try {
+        revocations.revoke(jwt.verify(authorization.substring(7)));
+      } catch (JwtException | IllegalArgumentException e) {
+        // Already expired or invalid: nothing to revoke
+      }
+    }
+    return ResponseEntity.noContent().build();
+  }
+
+  private Map<String, Object> session(User u, String refreshToken) {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("token", jwt.generateToken(u.getId(), u.getEmail(), u.getRole().name()));
+    body.put("refreshToken", refreshToken);
+    body.put("expiresIn", jwt.getExpMinutes() * 60);
+    body.put("userId", u.getId());
+    body.put("email", u.getEmail());
+    body.put("role", u.getRole().name());
+    return body;
   }
 
 @PostMapping("/google")
@@ -121,16 +170,9 @@ public ResponseEntity<?> loginWithGoogle(@RequestBody Map<String, String> body)
     // Note: User entity doesn't have a 'name' field.
     // The name from Google is returned to the frontend for display purposes only.
 
-    // Generate JWT
-    String token = jwt.generateToken(user.getId(), user.getEmail(), user.getRole().name());
-
-    return ResponseEntity.ok(Map.of(
-            "token", token,
-            "userId", user.getId(),
-            "email", user.getEmail(),
-            "role", user.getRole().name(),
-            "name", name != null ? name : ""
-    ));
+    Map<String, Object> session = session(user, refreshTokens.issue(user.getId()));
+    session.put("name", name != null ? name : "");
+    return ResponseEntity.ok(session);
 }
 
   /**
@@ -0,0 +1,209 @@
+package com.uvg.wellnessapp.web;
+
+import com.uvg.wellnessapp.service.FileStorageService;
+import com.uvg.wellnessapp.service.FileStorageService.DirectLink;
+import com.uvg.wellnessapp.service.FileStorageService.StoredFile;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Serves uploaded files from {@code /files/{key}}.
+ * <p>
+ * Responses carry a strong ETag (SHA-256 of the content) and Last-Modified, and answer
+ * conditional requests with 304. Keys minted by {@link FileStorageService} are the SHA-256 of
+ * the content (older uploads: random UUIDs), so a key's content never changes and is cached
+ * as immutable for a year. Single byte
+ * ranges (with {@code If-Range}) are supported so players can seek in audio and video.
+ * The body is sent with Tomcat's sendfile when the connector offers it, otherwise with
+ * {@link FileChannel#transferTo}, so file bytes are not copied through the heap.
+ * <p>
+ * With remote storage ({@code app.storage.backend=s3}) the response is a redirect to a
+ * presigned URL instead, and the bytes never reach this node.
+ */
+@RestController
+public class FileController {
+
+  // Keys minted by FileStorageService: a SHA-256 or (before content addressing) a UUID, plus a lower-case extension
+  private static final Pattern IMMUTABLE_KEY = Pattern.compile(
+      "(?:[0-9a-f]{64}|[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})\\.[a-z0-9]+");
+
+  private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+  private static final String REVALIDATE = "public, no-cache";
+
+  // Tomcat request attributes for sendfile (see org.apache.coyote.Constants)
+  private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+  private final FileStorageService storage;
+
+  public FileController(FileStorageService storage) {
+    this.storage = storage;
+  }
+
+  // HEAD is routed here too; the body is skipped for it
+  @GetMapping("/files/{key:.+}")
+  public void serve(@PathVariable String key, HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    String contentType = MediaTypeFactory.getMediaType(key).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    String cacheControl = IMMUTABLE_KEY.matcher(key).matches() ? IMMUTABLE : REVALIDATE;
+    DirectLink link = storage.directLink(key, contentType, cacheControl).orElse(null);
+    if (link != null) {
+      redirect(key, link, request, response);
+      return;
+    }
+
+    StoredFile file = storage.find(key).orElse(null);
+    // Plain statuses rather than sendError: an error dispatch would go through security again
+    if (file == null) {
+      response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    response.setHeader(HttpHeaders.ETAG, file.etag());
+    response.setDateHeader(HttpHeaders.LAST_MODIFIED, file.lastModified());
+    response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+    response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+    if (notModified(request, file)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    long start = 0;
+    long end = file.size() - 1;
+    String range = request.getHeader(HttpHeaders.RANGE);
+    if (range != null && rangeStillValid(request, file)) {
+      List<HttpRange> ranges;
+      try {
+        ranges = HttpRange.parseRanges(range);
+      } catch (IllegalArgumentException e) {
+        ranges = List.of();
+      }
+      // Multiple ranges are rare for media; answering with the whole file is allowed
+      if (ranges.size() == 1) {
+        HttpRange requested = ranges.get(0);
+        try {
+          start = requested.getRangeStart(file.size());
+          end = requested.getRangeEnd(file.size());
+        } catch (IllegalArgumentException e) {
+          start = file.size();
+        }
+        if (file.size() == 0 || start >= file.size()) {
+          response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + file.size());
+          response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+          return;
+        }
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + file.size());
+      }
+    }
+
+    long length = end - start + 1;
+    response.setContentType(contentType);
+    response.setContentLengthLong(length);
+    if ("HEAD".equals(request.getMethod()) || length == 0) {
+      return;
+    }
+
+    if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+      // Tomcat streams the file with sendfile(2) once this handler returns
+      request.setAttribute(SENDFILE_FILENAME, file.path().toString());
+      request.setAttribute(SENDFILE_START, start);
+      request.setAttribute(SENDFILE_END, end + 1);
+      return;
+    }
+
+    try (FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+      OutputStream out = response.getOutputStream();
+      WritableByteChannel target = Channels.newChannel(out);
+      long position = start;
+      long remaining = length;
+      while (remaining > 0) {
+        long sent = channel.transferTo(position, remaining, target);
+        if (sent <= 0) {
+          break;
+        }
+        position += sent;
+        remaining -= sent;
+      }
+      out.flush();
+    }
+  }
+
+  private void redirect(String key, DirectLink link, HttpServletRequest request, HttpServletResponse response) {
+    // A content-addressed key is its own ETag: revalidation needs no trip to storage
+    String etag = storage.contentEtag(key).orElse(null);
+    if (etag != null) {
+      response.setHeader(HttpHeaders.ETAG, etag);
+      String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+      if (ifNoneMatch != null && matchesEtag(ifNoneMatch, etag)) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+    }
+    // The redirect may be reused only while the signature is valid
+    response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=" + link.ttl().toSeconds() / 2);
+    response.setHeader(HttpHeaders.LOCATION, link.url().toString());
+    response.setStatus(HttpServletResponse.SC_FOUND);
+  }
+
+  private static boolean notModified(HttpServletRequest request, StoredFile file) {
+    String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch != null) {
+      // If-None-Match wins over If-Modified-Since
+      return matchesEtag(ifNoneMatch, file.etag());
+    }
+    long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+    // Header dates have one-second precision
+    return ifModifiedSince >= 0 && file.lastModified() / 1000 <= ifModifiedSince / 1000;
+  }
+
+  // If-Range: serve the range only if the client's copy is still current
+  private static boolean rangeStillValid(HttpServletRequest request, StoredFile file) {
+    String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+    if (ifRange == null) {
+      return true;
+    }
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      return ifRange.equals(file.etag());
+    }
+    long date = dateHeader(request, HttpHeaders.IF_RANGE);
+    return date >= 0 && file.lastModified() / 1000 == date / 1000;
+  }
+
+  private static boolean matchesEtag(String header, String etag) {
+    for (String candidate : header.split(",")) {
+      String tag = candidate.trim();
+      if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long dateHeader(HttpServletRequest request, String name) {
+    try {
+      return request.getDateHeader(name);
+    } catch (IllegalArgumentException e) {
+      return -1;
+    }
+  }
+}
@@ -1,7 +1,9 @@
 package com.uvg.wellnessapp.web;
 
+import com.uvg.wellnessapp.security.PasswordHashingBusyException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -35,6 +37,14 @@ public class GlobalExceptionHandler {
     return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(err);
   }
 
+  @ExceptionHandler(PasswordHashingBusyException.class)
+  public ResponseEntity<ApiError> handleHashingBusy(PasswordHashingBusyException ex, HttpServletRequest req) {
+    ApiError err = new ApiError(503, "Service Unavailable", ex.getMessage(), req.getRequestURI(), null);
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+        .body(err);
+  }
+
   @ExceptionHandler(Exception.class)
   public ResponseEntity<ApiError> handleGeneric(Exception ex, HttpServletRequest req) {
     ApiError err = new ApiError(500, "Internal Server Error", ex.getMessage(), req.getRequestURI(), null);
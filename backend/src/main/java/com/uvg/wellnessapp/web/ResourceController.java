@@ -1,12 +1,28 @@
 // web/ResourceController.java
 package com.uvg.wellnessapp.web;
 
+import com.uvg.wellnessapp.domain.ResourceFile;
 import com.uvg.wellnessapp.domain.ResourceItem;
+import com.uvg.wellnessapp.repository.ResourceFileRepository;
 import com.uvg.wellnessapp.repository.ResourceRepository;
+import com.uvg.wellnessapp.security.AuthUtils;
 import com.uvg.wellnessapp.security.JwtService;
 import com.uvg.wellnessapp.service.FileStorageService;
+import com.uvg.wellnessapp.service.ImageDerivativeService;
+import com.uvg.wellnessapp.service.ResourceCatalog;
+import com.uvg.wellnessapp.service.ResourceCategories;
+import com.uvg.wellnessapp.service.ResourceFavoriteService;
+import com.uvg.wellnessapp.service.ResourceFileStoredEvent;
+import com.uvg.wellnessapp.service.ResourceSearchService;
+import com.uvg.wellnessapp.service.ResumableUploadService;
+import com.uvg.wellnessapp.service.UploadException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,6 +32,9 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/v1/resources")
@@ -26,22 +45,160 @@ public class ResourceController {
   // Validation constants
   private static final int MAX_TITLE_LENGTH = 200;
   private static final int MAX_DESCRIPTION_LENGTH = 2000;
-  private static final int MAX_CATEGORY_LENGTH = 100;
+
+  private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
   private final ResourceRepository repo;
+  private final ResourceFileRepository files;
   private final FileStorageService storage;
+  private final ResumableUploadService uploads;
   private final JwtService jwt;
+  private final ApplicationEventPublisher events;
+  private final ResourceCatalog catalog;
+  private final ResourceSearchService search;
+  private final ResourceFavoriteService favorites;
+
+  @Value("${app.resources.catalog.max-age-seconds:10}")
+  private long catalogMaxAgeSeconds;
 
-  public ResourceController(ResourceRepository repo, FileStorageService storage, JwtService jwt) {
+  public ResourceController(ResourceRepository repo, ResourceFileRepository files, FileStorageService storage,
+                            ResumableUploadService uploads, JwtService jwt, ApplicationEventPublisher events,
+                            ResourceCatalog catalog, ResourceSearchService search,
+                            ResourceFavoriteService favorites) {
     this.repo = repo;
+    this.files = files;
     this.storage = storage;
+    this.uploads = uploads;
     this.jwt = jwt;
+    this.events = events;
+    this.catalog = catalog;
+    this.search = search;
+    this.favorites = favorites;
   }
 
-  // Público (APPROVED)
+  // Público (APPROVED), más recientes primero; la siguiente página se pide con el cursor de X-Next-Cursor
   @GetMapping("/public")
-  public List<ResourceItem> listPublic() {
-    return repo.findByStatusOrderByCreatedAtDesc("APPROVED");
+  public ResponseEntity<?> listPublic(
+      @RequestParam(required = false) String category,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "" + ResourceCatalog.DEFAULT_PAGE_SIZE) int limit,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+  ) {
+    ResourceCatalog.Page page;
+    try {
+      page = catalog.page(category == null || category.isBlank() ? null : category.trim(),
+          cursor == null || cursor.isBlank() ? null : cursor.trim(), limit);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+
+    // Short max-age: other nodes' changes only show up once their cached pages expire
+    boolean notModified = ifNoneMatch != null && ifNoneMatch.contains(page.etag());
+    ResponseEntity.BodyBuilder response = ResponseEntity.status(notModified ? 304 : 200)
+        .eTag(page.etag())
+        .cacheControl(CacheControl.maxAge(catalogMaxAgeSeconds, TimeUnit.SECONDS).cachePublic());
+    if (page.nextCursor() != null) {
+      response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+    }
+    if (notModified) {
+      return response.build();
+    }
+    return response.contentType(MediaType.APPLICATION_JSON).body(page.body());
+  }
+
+  // Público: búsqueda de texto completo, mejores coincidencias primero; paginada igual que /public
+  @GetMapping("/search")
+  public ResponseEntity<?> search(
+      @RequestParam(required = false) String q,
+      @RequestParam(required = false) String category,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "" + ResourceSearchService.DEFAULT_PAGE_SIZE) int limit
+  ) {
+    ResourceSearchService.Result result;
+    try {
+      result = search.search(q, category == null || category.isBlank() ? null : category.trim(),
+          cursor == null || cursor.isBlank() ? null : cursor.trim(), limit);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+        .cacheControl(CacheControl.maxAge(catalogMaxAgeSeconds, TimeUnit.SECONDS).cachePublic());
+    if (result.nextCursor() != null) {
+      response.header(NEXT_CURSOR_HEADER, result.nextCursor());
+    }
+    return response.body(result.hits());
+  }
+
+  // Público: más favoritos recientes primero (puntaje con decaimiento), recalculado periódicamente
+  @GetMapping("/popular")
+  public ResponseEntity<byte[]> popular(
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+  ) {
+    ResourceFavoriteService.PopularSnapshot snapshot = favorites.popular();
+    boolean notModified = ifNoneMatch != null && ifNoneMatch.contains(snapshot.etag());
+    ResponseEntity.BodyBuilder response = ResponseEntity.status(notModified ? 304 : 200)
+        .eTag(snapshot.etag())
+        .cacheControl(CacheControl.maxAge(catalogMaxAgeSeconds, TimeUnit.SECONDS).cachePublic());
+    if (notModified) {
+      return response.build();
+    }
+    return response.contentType(MediaType.APPLICATION_JSON).body(snapshot.body());
+  }
+
+  // Usuario: ids de sus recursos favoritos
+  @GetMapping("/favorites")
+  public ResponseEntity<?> myFavorites() {
+    Long userId = AuthUtils.resolveUserId(null);
+    if (userId == null) {
+      return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+    }
+    return ResponseEntity.ok()
+        .cacheControl(CacheControl.noStore())
+        .body(favorites.favoriteIds(userId));
+  }
+
+  // Usuario: marcar y desmarcar son idempotentes; responden el estado y el contador actual
+  @PutMapping("/{id}/favorite")
+  public ResponseEntity<?> favorite(@PathVariable Long id) {
+    Long userId = AuthUtils.resolveUserId(null);
+    if (userId == null) {
+      return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+    }
+    return favorites.favorite(userId, id)
+        .<ResponseEntity<?>>map(ResponseEntity::ok)
+        .orElse(ResponseEntity.notFound().build());
+  }
+
+  @DeleteMapping("/{id}/favorite")
+  public ResponseEntity<?> unfavorite(@PathVariable Long id) {
+    Long userId = AuthUtils.resolveUserId(null);
+    if (userId == null) {
+      return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+    }
+    return favorites.unfavorite(userId, id)
+        .<ResponseEntity<?>>map(ResponseEntity::ok)
+        .orElse(ResponseEntity.notFound().build());
+  }
+
+  // Público: la imagen más pequeña que cubra el ancho pedido (miniatura si ya existe, si no el original)
+  @GetMapping("/{id}/preview")
+  public ResponseEntity<?> preview(@PathVariable Long id, @RequestParam(defaultValue = "320") int width) {
+    ResourceItem r = repo.findById(id).orElse(null);
+    if (r == null || !"APPROVED".equals(r.getStatus()) || !ImageDerivativeService.isImage(r.getFileKey())) {
+      return ResponseEntity.notFound().build();
+    }
+    String url = r.getFileUrl();
+    for (ResourceFile f : files.findByResourceIdOrderByWidthAsc(id)) {
+      url = f.getFileUrl();
+      if (Math.max(f.getWidth(), f.getHeight()) >= width) {
+        break;
+      }
+    }
+    // Short cache: a thumbnail may appear shortly after upload; the file itself is immutable
+    return ResponseEntity.status(302)
+        .header(HttpHeaders.LOCATION, url)
+        .cacheControl(CacheControl.maxAge(5, TimeUnit.MINUTES).cachePublic())
+        .build();
   }
 
   // Admin (todo)
@@ -59,6 +216,7 @@ public class ResourceController {
       @RequestPart(value = "description", required = false) String description,
       @RequestPart(value = "category", required = false) String category,
       @RequestPart(value = "file", required = false) MultipartFile file,
+      @RequestPart(value = "uploadId", required = false) String uploadId,
       @RequestHeader("Authorization") String auth
   ) {
     // Validate title
@@ -87,18 +245,18 @@ public class ResourceController {
       }
     }
 
-    // Validate category
-    if (category != null) {
-      category = category.trim();
-      if (category.length() > MAX_CATEGORY_LENGTH) {
+    // Validate category: one of the list the filter offers, stored with its canonical spelling
+    if (category != null && !category.isBlank()) {
+      Optional<String> canonical = ResourceCategories.canonical(category);
+      if (canonical.isEmpty()) {
         return ResponseEntity.badRequest().body(Map.of(
-            "error", "Category too long",
-            "maxLength", MAX_CATEGORY_LENGTH
+            "error", "Unknown category",
+            "allowed", ResourceCategories.ALL
         ));
       }
-      if (category.isEmpty()) {
-        category = null;
-      }
+      category = canonical.get();
+    } else {
+      category = null;
     }
 
     // Validate auth header
@@ -107,15 +265,24 @@ public class ResourceController {
     }
 
     try {
-      // Store file (validated inside FileStorageService)
-      var stored = storage.store(file);
-
       // Extract user ID from token
       Long userId = jwt.getUserId(auth.substring(7));
       if (userId == null) {
         return ResponseEntity.badRequest().body(Map.of("error", "Invalid token"));
       }
 
+      // Store file (validated inside FileStorageService); the file reference commits with the resource.
+      // Large files arrive beforehand through /api/v1/uploads and are referenced by uploadId.
+      FileStorageService.Stored stored;
+      if (uploadId != null && !uploadId.isBlank()) {
+        if (file != null && !file.isEmpty()) {
+          return ResponseEntity.badRequest().body(Map.of("error", "Send either file or uploadId, not both"));
+        }
+        stored = uploads.complete(uploads.get(UUID.fromString(uploadId.trim()), userId));
+      } else {
+        stored = storage.store(file);
+      }
+
       // Create resource
       var r = new ResourceItem();
       r.setTitle(title);
@@ -129,10 +296,18 @@ public class ResourceController {
       r.setStatus("APPROVED");
 
       ResourceItem saved = repo.save(r);
+      catalog.invalidate();
+      if (stored != null) {
+        events.publishEvent(new ResourceFileStoredEvent(saved.getId(), stored.key()));
+      }
       log.info("Resource created: id={}, title='{}', by userId={}", saved.getId(), title, userId);
 
       return ResponseEntity.status(201).body(saved);
 
+    } catch (UploadException e) {
+      log.warn("Resource creation failed - upload {}: {}", uploadId, e.getMessage());
+      return ResponseEntity.status(e.getReason() == UploadException.Reason.NOT_FOUND ? 404 : 409)
+          .body(Map.of("error", e.getMessage()));
     } catch (IllegalArgumentException e) {
       // File validation errors from FileStorageService
       log.warn("Resource creation failed - invalid file: {}", e.getMessage());
@@ -150,11 +325,16 @@ public class ResourceController {
   @PreAuthorize("hasRole('ADMIN')")
   @Transactional
   public ResponseEntity<?> delete(@PathVariable Long id) {
-    return repo.findById(id).map(r -> {
+    return repo.findByIdForUpdate(id).map(r -> {
       if (r.getFileKey() != null) {
         storage.delete(r.getFileKey());
       }
+      // Rows go with the resource (ON DELETE CASCADE); their files are released here
+      for (ResourceFile f : files.findByResourceIdOrderByWidthAsc(id)) {
+        storage.delete(f.getFileKey());
+      }
       repo.delete(r);
+      catalog.invalidate();
       log.info("Resource deleted: id={}", id);
       return ResponseEntity.noContent().build();
     }).orElse(ResponseEntity.notFound().build());
@@ -0,0 +1,135 @@
+package com.uvg.wellnessapp.web;
+
+import com.uvg.wellnessapp.domain.UploadSession;
+import com.uvg.wellnessapp.security.AuthUtils;
+import com.uvg.wellnessapp.service.ResumableUploadService;
+import com.uvg.wellnessapp.service.UploadException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Resumable uploads for large resource files (the core of the tus 1.0 protocol).
+ * <p>
+ * {@code POST} with {@code Upload-Length} and {@code Upload-Metadata} (base64 {@code filename}
+ * and {@code filetype}) creates an upload; {@code HEAD} reports {@code Upload-Offset};
+ * {@code PATCH} with {@code Content-Type: application/offset+octet-stream} appends a chunk at
+ * that offset. A finished upload becomes a resource by passing its id as {@code uploadId}
+ * to {@code POST /api/v1/resources}.
+ */
+@RestController
+@RequestMapping("/api/v1/uploads")
+@PreAuthorize("hasRole('ADMIN')")
+public class UploadController {
+
+  private static final Logger log = LoggerFactory.getLogger(UploadController.class);
+
+  static final String TUS_RESUMABLE = "Tus-Resumable";
+  static final String TUS_VERSION = "1.0.0";
+  static final String UPLOAD_LENGTH = "Upload-Length";
+  static final String UPLOAD_OFFSET = "Upload-Offset";
+  static final String UPLOAD_METADATA = "Upload-Metadata";
+  static final String UPLOAD_EXPIRES = "Upload-Expires";
+  static final String OFFSET_CONTENT_TYPE = "application/offset+octet-stream";
+
+  private final ResumableUploadService uploads;
+
+  public UploadController(ResumableUploadService uploads) {
+    this.uploads = uploads;
+  }
+
+  @PostMapping
+  public ResponseEntity<?> create(
+      @RequestHeader(UPLOAD_LENGTH) long length,
+      @RequestHeader(value = UPLOAD_METADATA, required = false) String metadata
+  ) throws IOException {
+    Map<String, String> meta = parseMetadata(metadata);
+    UploadSession session = uploads.create(
+        AuthUtils.resolveUserId(null), meta.get("filename"), meta.get("filetype"), length);
+    return ResponseEntity.status(HttpStatus.CREATED)
+        .header(HttpHeaders.LOCATION, "/api/v1/uploads/" + session.getId())
+        .header(TUS_RESUMABLE, TUS_VERSION)
+        .header(UPLOAD_EXPIRES, DateTimeFormatter.RFC_1123_DATE_TIME.format(session.getExpiresAt()))
+        .body(Map.of("id", session.getId()));
+  }
+
+  @RequestMapping(value = "/{id}", method = RequestMethod.HEAD)
+  public ResponseEntity<Void> status(@PathVariable UUID id) throws IOException {
+    UploadSession session = uploads.get(id, AuthUtils.resolveUserId(null));
+    return ResponseEntity.ok()
+        .header(HttpHeaders.CACHE_CONTROL, "no-store")
+        .header(TUS_RESUMABLE, TUS_VERSION)
+        .header(UPLOAD_OFFSET, String.valueOf(uploads.offset(session)))
+        .header(UPLOAD_LENGTH, String.valueOf(session.getUploadLength()))
+        .build();
+  }
+
+  // Body read as a raw stream: nothing is buffered or parsed as multipart
+  @PatchMapping("/{id}")
+  public ResponseEntity<Void> append(
+      @PathVariable UUID id,
+      @RequestHeader(UPLOAD_OFFSET) long offset,
+      HttpServletRequest request
+  ) throws IOException {
+    if (request.getContentType() == null || !request.getContentType().startsWith(OFFSET_CONTENT_TYPE)) {
+      return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).header(TUS_RESUMABLE, TUS_VERSION).build();
+    }
+    UploadSession session = uploads.get(id, AuthUtils.resolveUserId(null));
+    long newOffset = uploads.append(session, offset, request.getInputStream());
+    return ResponseEntity.noContent()
+        .header(TUS_RESUMABLE, TUS_VERSION)
+        .header(UPLOAD_OFFSET, String.valueOf(newOffset))
+        .build();
+  }
+
+  @DeleteMapping("/{id}")
+  public ResponseEntity<Void> cancel(@PathVariable UUID id) throws IOException {
+    uploads.cancel(uploads.get(id, AuthUtils.resolveUserId(null)));
+    return ResponseEntity.noContent().header(TUS_RESUMABLE, TUS_VERSION).build();
+  }
+
+  @ExceptionHandler(UploadException.class)
+  public ResponseEntity<Map<String, String>> handleUpload(UploadException e) {
+    HttpStatus status = switch (e.getReason()) {
+      case NOT_FOUND -> HttpStatus.NOT_FOUND;
+      case OFFSET_MISMATCH, INCOMPLETE -> HttpStatus.CONFLICT;
+      case LOCKED -> HttpStatus.LOCKED;
+      case TOO_LARGE -> HttpStatus.PAYLOAD_TOO_LARGE;
+      case INVALID_CONTENT -> HttpStatus.UNPROCESSABLE_ENTITY;
+    };
+    log.debug("Upload request rejected: {}", e.getMessage());
+    return ResponseEntity.status(status).header(TUS_RESUMABLE, TUS_VERSION).body(Map.of("error", e.getMessage()));
+  }
+
+  // "key base64value,key base64value"
+  private static Map<String, String> parseMetadata(String header) {
+    Map<String, String> values = new HashMap<>();
+    if (header == null || header.isBlank()) {
+      return values;
+    }
+    for (String pair : header.split(",")) {
+      String[] parts = pair.trim().split(" ", 2);
+      if (parts.length == 2) {
+        try {
+          values.put(parts[0], new String(Base64.getDecoder().decode(parts[1].trim()), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+          throw new IllegalArgumentException("Invalid Upload-Metadata value for " + parts[0]);
+        }
+      }
+    }
+    return values;
+  }
+}
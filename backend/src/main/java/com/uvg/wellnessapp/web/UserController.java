@@ -7,6 +7,9 @@ import com.uvg.wellnessapp.repository.UserRepository;
 import com.uvg.wellnessapp.repository.MoodEntryRepository;
 import com.uvg.wellnessapp.repository.AssessmentResultRepository;
 import com.uvg.wellnessapp.security.AuthUtils;
+import com.uvg.wellnessapp.security.JwtService;
+import com.uvg.wellnessapp.security.TokenRevocationList;
+import com.uvg.wellnessapp.service.RefreshTokenService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
@@ -22,15 +25,24 @@ public class UserController {
     private final MoodEntryRepository moodEntryRepository;
     private final AssessmentResultRepository assessmentResultRepository;
     private final PasswordEncoder passwordEncoder;
+    private final JwtService jwtService;
+    private final RefreshTokenService refreshTokenService;
+    private final TokenRevocationList tokenRevocations;
 
     public UserController(UserRepository userRepository,
                          MoodEntryRepository moodEntryRepository,
                          AssessmentResultRepository assessmentResultRepository,
-                         PasswordEncoder passwordEncoder) {
+                         PasswordEncoder passwordEncoder,
+                         JwtService jwtService,
+                         RefreshTokenService refreshTokenService,
+                         TokenRevocationList tokenRevocations) {
         this.userRepository = userRepository;
         this.moodEntryRepository = moodEntryRepository;
         this.assessmentResultRepository = assessmentResultRepository;
         this.passwordEncoder = passwordEncoder;
+        this.jwtService = jwtService;
+        this.refreshTokenService = refreshTokenService;
+        this.tokenRevocations = tokenRevocations;
     }
 
     /**
@@ -156,7 +168,15 @@ public class UserController {
         user.setPasswordHash(passwordEncoder.encode(newPassword));
         userRepository.save(user);
 
-        return ResponseEntity.ok(Map.of("message", "Password updated successfully"));
+        // Sign out every other session; this one continues with fresh tokens
+        refreshTokenService.revokeAllForUser(userId);
+        tokenRevocations.revokeAllForUser(userId);
+
+        return ResponseEntity.ok(Map.of(
+            "message", "Password updated successfully",
+            "token", jwtService.generateToken(user.getId(), user.getEmail(), user.getRole().name()),
+            "refreshToken", refreshTokenService.issue(userId)
+        ));
     }
 
     /**
@@ -179,6 +199,7 @@ public class UserController {
         moodEntryRepository.deleteByUserId(userId);
         assessmentResultRepository.deleteByUserId(userId);
         userRepository.deleteById(userId);
+        tokenRevocations.revokeAllForUser(userId);
 
         return ResponseEntity.ok(Map.of("message", "Account deleted successfully"));
     }
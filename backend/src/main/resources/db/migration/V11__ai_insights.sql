@@ -0,0 +1,11 @@
+-- Persisted AI dashboard insights, pre-generated off-peak or on demand.
+-- The fingerprint summarizes the input data so unchanged users are skipped.
+CREATE TABLE IF NOT EXISTS ai_insights (
+    user_id BIGINT PRIMARY KEY REFERENCES users(id) ON DELETE CASCADE,
+    fingerprint VARCHAR(64) NOT NULL,
+    insight_json TEXT NOT NULL,
+    input_tokens INT NOT NULL DEFAULT 0,
+    output_tokens INT NOT NULL DEFAULT 0,
+    generated_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
@@ -0,0 +1,11 @@
+-- Token buckets shared by every node when app.security.rate-limit.store=postgres.
+-- UNLOGGED skips the WAL for this hot, disposable table; a crash only resets the limits.
+CREATE UNLOGGED TABLE IF NOT EXISTS rate_limit_buckets (
+    policy VARCHAR(32) NOT NULL,
+    bucket_key VARCHAR(128) NOT NULL,
+    tokens DOUBLE PRECISION NOT NULL,
+    granted INT NOT NULL DEFAULT 0,
+    -- With time zone so nodes with different session time zones agree on elapsed time
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (policy, bucket_key)
+);
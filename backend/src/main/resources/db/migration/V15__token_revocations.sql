@@ -0,0 +1,14 @@
+-- Revoked access tokens, mirrored in memory by TokenRevocationList on every node.
+-- A row without jti revokes every token of the user issued before not_before;
+-- a row with jti revokes that one token. Rows are useless once expires_at passes,
+-- because the tokens they cover have expired by then.
+CREATE TABLE IF NOT EXISTS token_revocations (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    jti UUID,
+    not_before TIMESTAMPTZ,
+    expires_at TIMESTAMPTZ NOT NULL,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX idx_token_revocations_expires ON token_revocations(expires_at);
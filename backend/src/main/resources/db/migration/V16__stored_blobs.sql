@@ -0,0 +1,11 @@
+-- Content-addressed uploads: one file per distinct content, shared by every resource
+-- that uploaded it. blob_key is the SHA-256 (hex) plus the lower-case extension and is
+-- also the file name under app.storage.uploadDir. The file is unlinked when ref_count
+-- drops to zero. Files stored before this migration keep their UUID keys and no row.
+CREATE TABLE IF NOT EXISTS stored_blobs (
+    blob_key VARCHAR(80) PRIMARY KEY,
+    size_bytes BIGINT NOT NULL,
+    ref_count INT NOT NULL CHECK (ref_count >= 0),
+    created_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    last_referenced_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
@@ -0,0 +1,13 @@
+-- Derived files of a resource (e.g. image thumbnails), written by ImageDerivativeService.
+-- file_key is a content-addressed key in FileStorageService and holds one reference
+-- to its blob, released when the resource is deleted.
+ALTER TABLE resource_files ADD COLUMN IF NOT EXISTS variant VARCHAR(16);
+ALTER TABLE resource_files ADD COLUMN IF NOT EXISTS file_key VARCHAR(80);
+ALTER TABLE resource_files ADD COLUMN IF NOT EXISTS content_type VARCHAR(64);
+ALTER TABLE resource_files ADD COLUMN IF NOT EXISTS width INT;
+ALTER TABLE resource_files ADD COLUMN IF NOT EXISTS height INT;
+ALTER TABLE resource_files ADD COLUMN IF NOT EXISTS size_bytes BIGINT;
+ALTER TABLE resource_files ADD COLUMN IF NOT EXISTS created_at TIMESTAMPTZ NOT NULL DEFAULT NOW();
+
+-- One file per variant; also serves lookups by resource
+CREATE UNIQUE INDEX IF NOT EXISTS uq_resource_files_variant ON resource_files(resource_id, variant);
@@ -0,0 +1,15 @@
+-- Resumable uploads in progress (see ResumableUploadService). The bytes live in
+-- <uploadDir>/.partial/<id>; the file's size is the upload offset, so appending a
+-- chunk does not touch this table. Rows and files are dropped after expires_at.
+CREATE TABLE IF NOT EXISTS upload_sessions (
+    id UUID PRIMARY KEY,
+    created_by BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    file_name VARCHAR(255) NOT NULL,
+    extension VARCHAR(16) NOT NULL,
+    content_type VARCHAR(128) NOT NULL,
+    upload_length BIGINT NOT NULL CHECK (upload_length > 0),
+    created_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    expires_at TIMESTAMPTZ NOT NULL
+);
+
+CREATE INDEX idx_upload_sessions_expires ON upload_sessions(expires_at);
@@ -0,0 +1,6 @@
+-- Keyset paging of the public catalog (ResourceCatalog): newest first, id breaks ties.
+-- Partial on APPROVED so the index only holds rows the catalog can return.
+CREATE INDEX IF NOT EXISTS idx_resources_approved_recent
+    ON resources(created_at DESC, id DESC) WHERE status = 'APPROVED';
+CREATE INDEX IF NOT EXISTS idx_resources_approved_category_recent
+    ON resources(category, created_at DESC, id DESC) WHERE status = 'APPROVED';
@@ -0,0 +1,12 @@
+-- Full-text search over resources (ResourceSearchService), Spanish stemming and stop words.
+-- Title weighs most, then category, then description; the column is maintained by Postgres.
+ALTER TABLE resources ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (
+        setweight(to_tsvector('spanish', coalesce(title, '')), 'A') ||
+        setweight(to_tsvector('spanish', coalesce(category, '')), 'B') ||
+        setweight(to_tsvector('spanish', coalesce(description, '')), 'C')
+    ) STORED;
+
+-- Only APPROVED rows are searchable
+CREATE INDEX IF NOT EXISTS idx_resources_search
+    ON resources USING GIN (search_vector) WHERE status = 'APPROVED';
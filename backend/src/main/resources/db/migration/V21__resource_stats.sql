@@ -0,0 +1,17 @@
+-- Per-resource counters kept by ResourceFavoriteService in the same transaction as the
+-- favorite itself, so reads never count resource_favorites.
+-- popularity_score is an exponentially decayed favorite count as of popularity_updated_at:
+-- each update first decays the stored value to now, then adds (or removes) one favorite.
+CREATE TABLE IF NOT EXISTS resource_stats (
+    resource_id BIGINT PRIMARY KEY REFERENCES resources(id) ON DELETE CASCADE,
+    favorite_count INT NOT NULL DEFAULT 0 CHECK (favorite_count >= 0),
+    popularity_score DOUBLE PRECISION NOT NULL DEFAULT 0,
+    popularity_updated_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+
+-- Existing favorites: popularity starts at the full count and decays from now
+INSERT INTO resource_stats (resource_id, favorite_count, popularity_score)
+SELECT resource_id, count(*), count(*)
+FROM resource_favorites
+GROUP BY resource_id
+ON CONFLICT (resource_id) DO NOTHING;
@@ -0,0 +1,6 @@
+-- Logout and password changes revoke tokens; "used" now only means rotated,
+-- so a refresh with a revoked token is no longer reported as reuse.
+-- used_at lets a token rotated a moment ago (another tab, a lost response)
+-- be presented again within a short grace window.
+ALTER TABLE refresh_tokens ADD COLUMN IF NOT EXISTS revoked BOOLEAN NOT NULL DEFAULT FALSE;
+ALTER TABLE refresh_tokens ADD COLUMN IF NOT EXISTS used_at TIMESTAMP;
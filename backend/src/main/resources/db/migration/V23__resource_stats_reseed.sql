@@ -0,0 +1,26 @@
+-- V21 seeded existing favorites at full weight as of the migration, but removing one takes
+-- back exp(-age / tau) with its age counted from created_at, which left phantom popularity.
+-- Recompute every score from the favorites themselves, each decayed from its created_at to now
+-- with the default 72h half-life (tau = half-life / ln 2). Favorites added since V21 were
+-- tracked exactly, so the sum is right for them too. Numeric exp, so very old favorites
+-- round to 0 instead of underflowing.
+UPDATE resource_stats s
+SET favorite_count = f.favorites,
+    popularity_score = f.score,
+    popularity_updated_at = now()
+FROM (
+    SELECT resource_id,
+           count(*) AS favorites,
+           CAST(sum(exp(-GREATEST(extract(epoch FROM LOCALTIMESTAMP - created_at), 0)
+                         / (72 * 3600 / ln(2.0)))) AS DOUBLE PRECISION) AS score
+    FROM resource_favorites
+    GROUP BY resource_id
+) f
+WHERE s.resource_id = f.resource_id;
+
+-- Every favorite gone: whatever score is left is phantom
+UPDATE resource_stats s
+SET favorite_count = 0,
+    popularity_score = 0,
+    popularity_updated_at = now()
+WHERE NOT EXISTS (SELECT 1 FROM resource_favorites f WHERE f.resource_id = s.resource_id);
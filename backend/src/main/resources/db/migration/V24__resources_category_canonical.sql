@@ -0,0 +1,15 @@
+-- Categories were free text, and the catalog filter used to match them as a case-insensitive
+-- substring; the filter is now an exact match on the category index and uploads must pick one
+-- of the fixed categories. Rewrite existing categories to the canonical spelling of the first
+-- category they contain (accents optional), so they stay under the filter that found them.
+-- A category naming several topics keeps only the first; one naming none is left as it was.
+UPDATE resources
+SET category = CASE
+        WHEN lower(category) LIKE '%ansiedad%' THEN 'Ansiedad'
+        WHEN lower(category) LIKE '%depresi_n%' THEN 'Depresión'
+        WHEN lower(category) LIKE '%sue_o%' THEN 'Sueño'
+        WHEN lower(category) LIKE '%estr_s%' THEN 'Estrés'
+        WHEN lower(category) LIKE '%gu_as%' THEN 'Guías'
+        ELSE category
+    END
+WHERE category IS NOT NULL;
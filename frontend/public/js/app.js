@@ -3,6 +3,7 @@
 const BASE_URL = (window.APP_CONFIG && window.APP_CONFIG.API_BASE_URL) || "http://localhost:8082";
 const API = `${BASE_URL}/api/v1`;
 const STORAGE_TOKEN = "token";
+const STORAGE_REFRESH = "refreshToken";
 const STORAGE_PROFILE = "wellnessProfile";
 const STORAGE_NAMES_PREFIX = "wellnessProfileName:";
 const STORAGE_POINTS = "wellnessPoints";
@@ -1002,6 +1003,7 @@ let currentUser = null;
 let currentAssessment = null;
 let cachedHistory = [];
 let cachedResources = [];
+let favoriteResourceIds = new Set();
 
 // ====== Util ======
 
@@ -1044,7 +1046,13 @@ function showView(id) {
 
 function getToken() { return localStorage.getItem(STORAGE_TOKEN) || ""; }
 function setToken(t) { localStorage.setItem(STORAGE_TOKEN, t); }
-function clearToken() { localStorage.removeItem(STORAGE_TOKEN); }
+function clearToken() { localStorage.removeItem(STORAGE_TOKEN); localStorage.removeItem(STORAGE_REFRESH); }
+function getRefreshToken() { return localStorage.getItem(STORAGE_REFRESH) || ""; }
+function storeSession(data) {
+  setToken(data.token);
+  if (data.refreshToken) localStorage.setItem(STORAGE_REFRESH, data.refreshToken);
+  scheduleTokenRefresh();
+}
 function storeProfile(p) { localStorage.setItem(STORAGE_PROFILE, JSON.stringify(p)); }
 function loadStoredProfile() {
   const raw = localStorage.getItem(STORAGE_PROFILE);
@@ -1193,6 +1201,7 @@ function ensureAuth() {
   const profile = loadStoredProfile();
   if (token && profile) {
     currentUser = profile;
+    scheduleTokenRefresh();
     updateDashboard();
     updateAdminVisibility();
     showView("view-dashboard");
@@ -1226,8 +1235,80 @@ function updateAdminVisibility() {
   elements.btnOpenAdmin && elements.btnOpenAdmin.classList.toggle("hidden", !isAdmin);
 }
 
+// ====== Refresh de sesión ======
+// Los access tokens duran poco; el refresh token los renueva sin volver a pedir la contraseña.
+// Las pestañas comparten el refresh token (localStorage) y cada uso lo rota, así que solo una
+// pestaña a la vez puede renovarlo: las demás esperan el lock y usan el token que dejó guardado.
+const REFRESH_LOCK = "wellness-token-refresh";
+let refreshInFlight = null;
+let refreshTimer = null;
+
+function refreshAccessToken() {
+  if (refreshInFlight) return refreshInFlight;
+  if (!getRefreshToken()) return Promise.resolve(false);
+  const staleToken = getToken();
+  const run = () => {
+    // Otra pestaña renovó mientras esperábamos: su token sirve
+    if (getToken() !== staleToken && !tokenExpiresSoon(getToken())) return true;
+    return requestTokenRefresh();
+  };
+  refreshInFlight = (navigator.locks ? navigator.locks.request(REFRESH_LOCK, run) : Promise.resolve(run()))
+    .catch(() => false)
+    .finally(() => { refreshInFlight = null; });
+  return refreshInFlight;
+}
+
+function requestTokenRefresh() {
+  const refreshToken = getRefreshToken();
+  if (!refreshToken) return false;
+  return fetch(`${API}/auth/refresh`, {
+    method: "POST",
+    headers: { "Content-Type": "application/json" },
+    body: JSON.stringify({ refreshToken })
+  })
+    .then(async (res) => {
+      if (!res.ok) return false;
+      storeSession(await res.json());
+      return true;
+    });
+}
+
+function tokenExpiresSoon(token) {
+  const payload = decodeJwtPayload(token);
+  return !payload?.exp || payload.exp * 1000 - Date.now() < 60000;
+}
+
+function scheduleTokenRefresh() {
+  clearTimeout(refreshTimer);
+  const payload = decodeJwtPayload(getToken());
+  if (!payload?.exp || !getRefreshToken()) return;
+  // Renovar un minuto antes de que expire
+  const delay = Math.max(0, payload.exp * 1000 - Date.now() - 60000);
+  refreshTimer = setTimeout(() => { refreshAccessToken(); }, delay);
+}
+
+// Otra pestaña renovó la sesión o cerró sesión
+window.addEventListener("storage", (e) => {
+  if (e.key === null || e.key === STORAGE_TOKEN || e.key === STORAGE_REFRESH) scheduleTokenRefresh();
+});
+
+function logout() {
+  const refreshToken = getRefreshToken();
+  if (refreshToken) {
+    fetch(`${API}/auth/logout`, {
+      method: "POST",
+      headers: { "Content-Type": "application/json", Authorization: `Bearer ${getToken()}` },
+      body: JSON.stringify({ refreshToken })
+    }).catch(() => {});
+  }
+  clearTimeout(refreshTimer);
+  clearToken(); clearProfile(); currentUser = null; cachedHistory = [];
+  renderInsights([]); elements.historyPanel?.classList.add("hidden");
+  showView("view-login"); showToast("Sesión cerrada.");
+}
+
 // ====== fetch helper ======
-async function fetchJson(url, { method="GET", headers={}, body, auth=false, timeoutMs=10000 } = {}) {
+async function fetchJson(url, { method="GET", headers={}, body, auth=false, timeoutMs=10000, retried=false } = {}) {
   const controller = new AbortController();
   const t = setTimeout(() => controller.abort(), timeoutMs);
   const finalHeaders = { ...headers };
@@ -1242,7 +1323,13 @@ async function fetchJson(url, { method="GET", headers={}, body, auth=false, time
     res = await fetch(url, { method, headers: finalHeaders, body, signal: controller.signal });
   } finally { clearTimeout(t); }
 
-  if (res.status === 401) { clearToken(); clearProfile(); }
+  if (res.status === 401 && auth) {
+    // Access token vencido: renovar una vez y reintentar
+    if (!retried && await refreshAccessToken()) {
+      return fetchJson(url, { method, headers, body, auth, timeoutMs, retried: true });
+    }
+    clearToken(); clearProfile();
+  }
   const text = await res.text();
   const json = text ? ( (() => { try { return JSON.parse(text); } catch { return null; } })() ) : null;
   if (!res.ok) {
@@ -1382,7 +1469,7 @@ async function handleGoogleLogin(response) {
     const data = await apiGoogleLogin(idToken);
 
     // Guardar sesión igual que login normal
-    setToken(data.token);
+    storeSession(data);
     const name = data.name || getDisplayName(data.email);
     const role = data.role || "USER";
 
@@ -2855,7 +2942,7 @@ elements.loginForm && elements.loginForm.addEventListener("submit", async (e) =>
   setStatus(elements.loginStatus, "Iniciando sesión...");
   try {
     const data = await apiLogin(email, password);
-    setToken(data.token);
+    storeSession(data);
     const name = getDisplayName(data.email);
     const role = data.role || decodeJwtRole(data.token) || "USER";
     currentUser = { email: data.email, userId: data.userId, name, role };
@@ -3015,11 +3102,7 @@ Array.from(document.querySelectorAll("[data-switch]")).forEach(btn => {
   });
 });
 
-elements.btnLogout && elements.btnLogout.addEventListener("click", () => {
-  clearToken(); clearProfile(); currentUser = null; cachedHistory = [];
-  renderInsights([]); elements.historyPanel?.classList.add("hidden");
-  showView("view-login"); showToast("Sesión cerrada.");
-});
+elements.btnLogout && elements.btnLogout.addEventListener("click", logout);
 
 elements.btnStartGad7 && elements.btnStartGad7.addEventListener("click", () => startAssessment("gad7"));
 elements.btnStartPhq9 && elements.btnStartPhq9.addEventListener("click", () => startAssessment("phq9"));
@@ -3131,29 +3214,145 @@ if (promoteForm) {
 }
 
 // ====== Recursos ======
-async function apiResourcesList() {
+// El API pagina por cursor (cabecera X-Next-Cursor); se recorren las páginas hasta el final
+const RESOURCES_PAGE_SIZE = 100;
+const RESOURCES_MAX_PAGES = 20;
+
+async function apiResourcesList({ category = "", fresh = false } = {}) {
+  const items = [];
+  let cursor = null;
+  for (let n = 0; n < RESOURCES_MAX_PAGES; n++) {
+    const params = new URLSearchParams({ limit: String(RESOURCES_PAGE_SIZE) });
+    if (category) params.set("category", category);
+    if (cursor) params.set("cursor", cursor);
+
+    let res;
+    try {
+      // Tras crear o borrar, revalidar en lugar de usar la copia en caché del navegador
+      res = await fetch(`${RESOURCES_PUBLIC_URL}?${params}`, {
+        headers: { "Accept": "application/json" },
+        cache: fresh ? "no-cache" : "default"
+      });
+    } catch (e) {
+      console.error("[resources] Error de red:", e);
+      throw new Error("NETWORK");
+    }
+
+    if (!res.ok) {
+      const txt = await res.text().catch(() => "");
+      console.error("[resources] HTTP", res.status, txt);
+      throw new Error(String(res.status));
+    }
+
+    let page;
+    try {
+      page = await res.json();
+    } catch (e) {
+      const body = await res.clone().text().catch(() => "");
+      console.error("[resources] JSON inválido. Body:", body);
+      throw new Error("BAD_JSON");
+    }
+    if (Array.isArray(page)) items.push(...page);
+
+    cursor = res.headers.get("X-Next-Cursor");
+    if (!cursor) break;
+  }
+  return items;
+}
+// Búsqueda de texto completo en el servidor; solo la primera página (los mejores resultados)
+const RESOURCES_SEARCH_URL = `${API}/resources/search`;
+
+async function apiResourceSearch({ q, category = "" }) {
+  const params = new URLSearchParams({ q });
+  if (category) params.set("category", category);
   let res;
   try {
-    res = await fetch(RESOURCES_PUBLIC_URL, { headers: { "Accept": "application/json" } });
+    res = await fetch(`${RESOURCES_SEARCH_URL}?${params}`, { headers: { "Accept": "application/json" } });
   } catch (e) {
     console.error("[resources] Error de red:", e);
     throw new Error("NETWORK");
   }
-
   if (!res.ok) {
     const txt = await res.text().catch(() => "");
-    console.error("[resources] HTTP", res.status, txt);
+    console.error("[resources] search HTTP", res.status, txt);
     throw new Error(String(res.status));
   }
+  return res.json();
+}
+// Archivos grandes: subida reanudable por partes (/api/v1/uploads, protocolo tus)
+const UPLOADS_URL = `${API}/uploads`;
+const CHUNKED_UPLOAD_THRESHOLD = 8 * 1024 * 1024;
+const UPLOAD_CHUNK_SIZE = 5 * 1024 * 1024;
+const UPLOAD_MAX_RETRIES = 5;
 
-  try {
-    return await res.json();
-  } catch (e) {
-    const body = await res.clone().text().catch(() => "");
-    console.error("[resources] JSON inválido. Body:", body);
-    throw new Error("BAD_JSON");
+function uploadResumeKey(file) {
+  return `wellness.upload:${file.name}:${file.size}:${file.lastModified}`;
+}
+
+async function uploadOffset(url, token) {
+  const res = await fetch(url, { method: "HEAD", headers: { Authorization: `Bearer ${token}`, "Tus-Resumable": "1.0.0" } });
+  if (!res.ok) return null;
+  return Number(res.headers.get("Upload-Offset"));
+}
+
+async function apiUploadResumable(file) {
+  const token = getToken();
+  const resumeKey = uploadResumeKey(file);
+  let url = localStorage.getItem(resumeKey);
+  let offset = url ? await uploadOffset(url, token) : null;
+
+  if (offset === null) {
+    const meta = `filename ${btoa(unescape(encodeURIComponent(file.name)))},filetype ${btoa(file.type || "application/octet-stream")}`;
+    const res = await fetch(UPLOADS_URL, {
+      method: "POST",
+      headers: { Authorization: `Bearer ${token}`, "Tus-Resumable": "1.0.0", "Upload-Length": String(file.size), "Upload-Metadata": meta }
+    });
+    if (!res.ok) {
+      const body = await res.json().catch(() => ({}));
+      throw new Error(body.error || body.message || "No se pudo iniciar la subida");
+    }
+    url = `${BASE_URL}${res.headers.get("Location")}`;
+    localStorage.setItem(resumeKey, url);
+    offset = 0;
   }
+
+  let retries = 0;
+  while (offset < file.size) {
+    try {
+      const res = await fetch(url, {
+        method: "PATCH",
+        headers: {
+          Authorization: `Bearer ${getToken()}`,
+          "Tus-Resumable": "1.0.0",
+          "Upload-Offset": String(offset),
+          "Content-Type": "application/offset+octet-stream"
+        },
+        body: file.slice(offset, offset + UPLOAD_CHUNK_SIZE)
+      });
+      if (res.status === 409) {
+        offset = await uploadOffset(url, getToken()); // el servidor tiene otra posición: retomar desde ahí
+        if (offset === null) throw new Error("La subida expiró");
+        continue;
+      }
+      if (!res.ok) {
+        const body = await res.json().catch(() => ({}));
+        throw Object.assign(new Error(body.error || "Error al subir archivo"), { fatal: res.status < 500 && res.status !== 423 });
+      }
+      offset = Number(res.headers.get("Upload-Offset"));
+      retries = 0;
+    } catch (e) {
+      if (e.fatal || ++retries > UPLOAD_MAX_RETRIES) {
+        throw e;
+      }
+      // Conexión caída: esperar y continuar desde lo que el servidor ya recibió
+      await new Promise(r => setTimeout(r, 1000 * 2 ** retries));
+      const current = await uploadOffset(url, getToken()).catch(() => null);
+      if (current !== null) offset = current;
+    }
+  }
+  return { id: url.substring(url.lastIndexOf("/") + 1), resumeKey };
 }
+
 async function apiResourceCreate({ title, description, category, file }) {
   const token = getToken();
   if (!token) throw new Error("Necesitas iniciar sesión");
@@ -3161,7 +3360,13 @@ async function apiResourceCreate({ title, description, category, file }) {
   fd.append("title", title);
   if (description) fd.append("description", description);
   if (category) fd.append("category", category);
-  if (file) fd.append("file", file);
+  let upload = null;
+  if (file && file.size > CHUNKED_UPLOAD_THRESHOLD) {
+    upload = await apiUploadResumable(file);
+    fd.append("uploadId", upload.id);
+  } else if (file) {
+    fd.append("file", file);
+  }
   const res = await fetch(RESOURCES_ADMIN_URL, { method: "POST", headers: { Authorization: `Bearer ${token}` }, body: fd });
   if (res.status === 401 || res.status === 403) throw new Error("No autorizado para crear recursos");
   if (!res.ok) {
@@ -3169,6 +3374,7 @@ async function apiResourceCreate({ title, description, category, file }) {
     console.error("[resources] create HTTP", res.status, txt);
     throw new Error("Error al crear recurso");
   }
+  if (upload) localStorage.removeItem(upload.resumeKey);
   return res.json();
 }
 async function apiResourceDelete(id) {
@@ -3183,6 +3389,29 @@ async function apiResourceDelete(id) {
   }
 }
 
+// Favoritos: PUT/DELETE son idempotentes; el servidor responde el contador actual
+async function apiFavoriteIds() {
+  const token = getToken();
+  if (!token) return [];
+  const res = await fetch(`${RESOURCES_ADMIN_URL}/favorites`, { headers: { Authorization: `Bearer ${token}` } });
+  if (!res.ok) return [];
+  return res.json();
+}
+
+async function apiFavoriteSet(id, favorited) {
+  const token = getToken();
+  if (!token) throw new Error("Necesitas iniciar sesión");
+  const res = await fetch(`${RESOURCES_ADMIN_URL}/${encodeURIComponent(id)}/favorite`, {
+    method: favorited ? "PUT" : "DELETE",
+    headers: { Authorization: `Bearer ${token}` }
+  });
+  if (!res.ok) {
+    console.error("[resources] favorite HTTP", res.status);
+    throw new Error("Error al guardar favorito");
+  }
+  return res.json();
+}
+
 function openResourcesView() {
   showView("view-resources");
   const isAdmin = currentUser && currentUser.role === "ADMIN";
@@ -3195,9 +3424,15 @@ function openResourcesView() {
   loadAndRenderResources();
 }
 
-async function loadAndRenderResources() {
+async function loadAndRenderResources({ fresh = false } = {}) {
   try {
-    const items = await apiResourcesList();
+    // La categoría se filtra en el servidor; el texto de búsqueda, aquí
+    const category = (elements.resourceFilterCategory?.value || "").trim();
+    const [items, favIds] = await Promise.all([
+      apiResourcesList({ category, fresh }),
+      apiFavoriteIds().catch(() => [])
+    ]);
+    favoriteResourceIds = new Set(favIds);
     cachedResources = Array.isArray(items) ? items : [];
     applyResourceFilters(); // ⬅️ en lugar de renderResources(items)
   } catch (e) {
@@ -3215,25 +3450,31 @@ async function loadAndRenderResources() {
   }
 }
 
+// Con texto de búsqueda, el servidor busca y resalta; sin texto, se muestra el catálogo cargado
+const RESOURCE_SEARCH_MIN_LENGTH = 2;
+const RESOURCE_SEARCH_DEBOUNCE_MS = 250;
+let resourceSearchTimer = null;
+let resourceSearchSeq = 0;
+
 function applyResourceFilters() {
-  if (!Array.isArray(cachedResources)) {
-    renderResources([]);
+  clearTimeout(resourceSearchTimer);
+  const q = (elements.resourceSearch?.value || "").trim();
+  if (q.length < RESOURCE_SEARCH_MIN_LENGTH) {
+    resourceSearchSeq++;
+    renderResources(Array.isArray(cachedResources) ? cachedResources : []);
     return;
   }
-  const q = (elements.resourceSearch?.value || "").toLowerCase().trim();
-  const cat = (elements.resourceFilterCategory?.value || "").toLowerCase().trim();
-
-  const filtered = cachedResources.filter(r => {
-    const title = (r.title || "").toLowerCase();
-    const desc = (r.description || "").toLowerCase();
-    const rCat = (r.category || "").toLowerCase();
-
-    if (q && !(title.includes(q) || desc.includes(q))) return false;
-    if (cat && !rCat.includes(cat)) return false;
-    return true;
-  });
-
-  renderResources(filtered);
+  resourceSearchTimer = setTimeout(async () => {
+    const seq = ++resourceSearchSeq;
+    const category = (elements.resourceFilterCategory?.value || "").trim();
+    try {
+      const hits = await apiResourceSearch({ q, category });
+      // Ignorar respuestas de búsquedas ya reemplazadas
+      if (seq === resourceSearchSeq) renderResources(Array.isArray(hits) ? hits : []);
+    } catch (e) {
+      if (seq === resourceSearchSeq) showToast("No se pudo buscar en los recursos.");
+    }
+  }, RESOURCE_SEARCH_DEBOUNCE_MS);
 }
 
 function renderResources(items) {
@@ -3257,9 +3498,13 @@ function renderResources(items) {
     const safeTitle = escapeHtml(r.title ?? "Recurso");
     const safeCategory = escapeHtml(r.category ?? "General");
     const safeStatus = escapeHtml(r.status ?? "APPROVED");
-    const safeDescription = escapeHtml(r.description ?? "");
+    // snippet (búsqueda) ya viene escapado por el servidor, solo con <mark> en las coincidencias
+    const safeDescription = r.snippet != null ? r.snippet : escapeHtml(r.description ?? "");
     // Validate fileUrl is a safe path (starts with /files/)
     const safeFileUrl = r.fileUrl && r.fileUrl.startsWith('/files/') ? encodeURI(r.fileUrl) : null;
+    // Images get a preview; the server redirects to a thumbnail when one has been generated
+    const isImage = safeFileUrl && /\.(jpe?g|png|gif|webp)$/i.test(safeFileUrl);
+    const previewUrl = isImage ? `${RESOURCES_ADMIN_URL}/${encodeURIComponent(r.id)}/preview?width=320` : null;
     const dateStr = r.createdAt ? new Date(r.createdAt).toLocaleString("es-GT") : "";
 
     return `
@@ -3272,8 +3517,10 @@ function renderResources(items) {
         <span class="insight-badge">${safeStatus}</span>
       </header>
       <div class="insight-body">
+        ${previewUrl ? `<img class="resource-preview" src="${previewUrl}" alt="" loading="lazy" decoding="async">` : ""}
         <p>${safeDescription}</p>
         ${safeFileUrl ? `<a class="btn btn--light" href="${BASE_URL}${safeFileUrl}" target="_blank" rel="noopener">Abrir archivo</a>` : ""}
+        ${getToken() ? `<button type="button" class="btn btn--light" data-favorite-id="${escapeHtml(String(r.id))}" aria-pressed="${favoriteResourceIds.has(r.id)}">${favoriteResourceIds.has(r.id) ? "★ En favoritos" : "☆ Guardar"}</button>` : ""}
         <p class="insight-last">Publicado: ${escapeHtml(dateStr)}</p>
       </div>
     </article>
@@ -3358,6 +3605,23 @@ function renderResultAnalytics(type, answers) {
 elements.btnOpenResources && elements.btnOpenResources.addEventListener("click", openResourcesView);
 elements.btnBackFromResources && elements.btnBackFromResources.addEventListener("click", () => showView("view-dashboard"));
 elements.resourceSearch && elements.resourceSearch.addEventListener("input", () => applyResourceFilters());
+elements.resourcesList && elements.resourcesList.addEventListener("click", async (e) => {
+  const btn = e.target.closest("[data-favorite-id]");
+  if (!btn) return;
+  const id = Number(btn.dataset.favoriteId);
+  const favorited = !favoriteResourceIds.has(id);
+  btn.disabled = true;
+  try {
+    await apiFavoriteSet(id, favorited);
+    favorited ? favoriteResourceIds.add(id) : favoriteResourceIds.delete(id);
+    btn.setAttribute("aria-pressed", String(favorited));
+    btn.textContent = favorited ? "★ En favoritos" : "☆ Guardar";
+  } catch (err) {
+    showToast(err.message);
+  } finally {
+    btn.disabled = false;
+  }
+});
 
 // ====== Binds de respiración ======
 elements.btnOpenBreathing?.addEventListener("click", () => {
@@ -3368,7 +3632,7 @@ elements.btnBackFromBreathing?.addEventListener("click", () => {
   Breathing.stop();
   showView("view-dashboard");
 });
-elements.resourceFilterCategory && elements.resourceFilterCategory.addEventListener("change", () => applyResourceFilters());
+elements.resourceFilterCategory && elements.resourceFilterCategory.addEventListener("change", () => loadAndRenderResources());
 
 // ====== Binds de configuración ======
 elements.btnOpenSettings?.addEventListener("click", () => {
@@ -3394,7 +3658,7 @@ if (elements.formResourceUpload) {
       await apiResourceCreate({ title, description, category, file });
       elements.formResourceUpload.reset();
       setStatus(status, "Publicado ✔", "success");
-      loadAndRenderResources();
+      loadAndRenderResources({ fresh: true });
     } catch (err) {
       console.error(err);
       setStatus(status, "No se pudo publicar", "error");
@@ -3528,6 +3792,14 @@ const AiInsights = (() => {
       const data = await apiAiAssessmentAnalysis(type, total, category, answers);
       if (!data || data.disponible === false) { section.style.display = "none"; return; }
 
+      if (data.error || data.limitado) {
+        showEl("aiAssessmentLoading", false);
+        showEl("aiAssessmentError", true);
+        const msgEl = $("aiAssessmentError")?.querySelector("p");
+        if (msgEl && data.mensaje) msgEl.textContent = data.mensaje;
+        return;
+      }
+
       showEl("aiAssessmentLoading", false);
       showEl("aiAssessmentContent", true);
 